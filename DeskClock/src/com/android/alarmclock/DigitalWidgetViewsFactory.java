@@ -16,15 +16,9 @@
 
 package com.android.alarmclock;
 
-import java.util.Calendar;
-import java.util.Locale;
-import java.util.TimeZone;
-
 import android.appwidget.AppWidgetManager;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.provider.Settings;
 import android.text.TextUtils;
 import android.util.TypedValue;
@@ -34,21 +28,38 @@ import android.widget.RemoteViewsService.RemoteViewsFactory;
 
 import com.android.deskclock.R;
 import com.android.deskclock.worldclock.CityObj;
+import com.android.deskclock.worldclock.SelectedCities;
 import com.android.deskclock.worldclock.WorldClockAdapter;
 
-public class DigitalWidgetViewsFactory extends BroadcastReceiver implements RemoteViewsFactory {
+public class DigitalWidgetViewsFactory implements RemoteViewsFactory,
+        WidgetUpdateDispatcher.Client {
     private static final String TAG = "DigitalWidgetViewsFactory";
 
     private Context mContext;
     private int mId = AppWidgetManager.INVALID_APPWIDGET_ID;
     private RemoteWorldClockAdapter mAdapter;
-    private boolean mReloadCitiesList = true;
+    // Set when the selected cities change, possibly from another thread.
+    private volatile boolean mReloadCitiesList = true;
     private float mFontScale = 1;
+    // Next alarm text last pushed to the widget, only used on the main thread.
+    private String mShownAlarm;
+    private boolean mAlarmShown;
+
+    private final SelectedCities.OnChangeListener mCitiesListener =
+            new SelectedCities.OnChangeListener() {
+        @Override
+        public void onSelectedCitiesChanged() {
+            mReloadCitiesList = true;
+        }
+    };
 
     // An adapter to provide the view for the list of cities in the world clock.
     private class RemoteWorldClockAdapter extends WorldClockAdapter {
         private final float mFontSize;
 
+        // Day of week label of each city when the rows were last built.
+        private volatile String[] mShownDays;
+
         public RemoteWorldClockAdapter(Context context) {
             super(context);
             mFontSize = context.getResources().getDimension(R.dimen.widget_medium_font_size);
@@ -80,23 +91,52 @@ public class DigitalWidgetViewsFactory extends BroadcastReceiver implements Remo
             return views;
         }
 
+        /**
+         * Remembers the day of week labels the rows are about to be built with.
+         */
+        void setShownDays(long now) {
+            final Object[] cities = mCitiesList;
+            final String[] days = new String[cities.length];
+            final int localDayOfWeek = getLocalDayOfWeek(now);
+            for (int i = 0; i < cities.length; i++) {
+                days[i] = getCityDayOfWeek((CityObj) cities[i], now, localDayOfWeek);
+            }
+            mShownDays = days;
+        }
+
+        /**
+         * Returns true if some city's day of week label differs from the one
+         * its row shows.
+         */
+        boolean haveDaysChanged(long now) {
+            final Object[] cities = mCitiesList;
+            final String[] days = mShownDays;
+            if (days == null || days.length != cities.length) {
+                return true;
+            }
+            final int localDayOfWeek = getLocalDayOfWeek(now);
+            for (int i = 0; i < cities.length; i++) {
+                if (!TextUtils.equals(days[i],
+                        getCityDayOfWeek((CityObj) cities[i], now, localDayOfWeek))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         private void updateView(RemoteViews clock, CityObj cityObj, int clockId1, int clockId2,
                 int labelId, int dayId) {
-            final Calendar now = Calendar.getInstance();
-            now.setTimeInMillis(System.currentTimeMillis());
-            int myDayOfWeek = now.get(Calendar.DAY_OF_WEEK);
-            now.setTimeZone(TimeZone.getTimeZone(cityObj.mTimeZone));
-            int cityDayOfWeek = now.get(Calendar.DAY_OF_WEEK);
+            final long now = System.currentTimeMillis();
+            final String cityDayOfWeek = getCityDayOfWeek(cityObj, now, getLocalDayOfWeek(now));
 
             clock.setTextViewTextSize(clockId1, TypedValue.COMPLEX_UNIT_PX, mFontSize * mFontScale);
             clock.setTextViewTextSize(clockId2, TypedValue.COMPLEX_UNIT_PX, mFontSize * mFontScale);
             clock.setString(clockId1, "setTimeZone", cityObj.mTimeZone);
             clock.setString(clockId2, "setTimeZone", cityObj.mTimeZone);
             clock.setTextViewText(labelId, cityObj.mCityName);
-            if (myDayOfWeek != cityDayOfWeek) {
+            if (cityDayOfWeek != null) {
                 clock.setTextViewText(dayId, mContext.getString(
-                        R.string.world_day_of_week_label, now.getDisplayName(
-                                Calendar.DAY_OF_WEEK, Calendar.SHORT, Locale.getDefault())));
+                        R.string.world_day_of_week_label, cityDayOfWeek));
                 clock.setViewVisibility(dayId, View.VISIBLE);
             } else {
                 clock.setViewVisibility(dayId, View.GONE);
@@ -123,9 +163,6 @@ public class DigitalWidgetViewsFactory extends BroadcastReceiver implements Remo
         mAdapter = new RemoteWorldClockAdapter(c);
     }
 
-    public DigitalWidgetViewsFactory() {
-    }
-
     @Override
     public int getCount() {
         if (WidgetUtils.showList(mContext, mId, mFontScale)) {
@@ -166,18 +203,9 @@ public class DigitalWidgetViewsFactory extends BroadcastReceiver implements Remo
 
     @Override
     public void onCreate() {
-        // Do intent listening registration here since doing it in the manifest creates a new
-        // new factory
-        IntentFilter filter = new IntentFilter();
-        filter.addAction(Intent.ACTION_DATE_CHANGED);
-        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
-        filter.addAction(Intent.ACTION_SCREEN_ON);
-        filter.addAction(Intent.ACTION_TIME_TICK);
-        filter.addAction(Intent.ACTION_TIME_CHANGED);
-        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
-        filter.addAction("com.android.deskclock.NEXT_ALARM_TIME_SET");
-        filter.addAction("com.android.deskclock.worldclock.update");
-        mContext.registerReceiver(this, filter);
+        // All widgets share one receiver, the factory is told what changed
+        WidgetUpdateDispatcher.getInstance(mContext).addClient(this);
+        SelectedCities.getInstance(mContext).registerListener(mCitiesListener);
     }
 
     @Override
@@ -186,54 +214,64 @@ public class DigitalWidgetViewsFactory extends BroadcastReceiver implements Remo
             mAdapter.loadData(mContext);
             mReloadCitiesList = false;
         }
+        mAdapter.setShownDays(System.currentTimeMillis());
         mFontScale = WidgetUtils.getScaleRatio(mContext, null, mId);
     }
 
     @Override
     public void onDestroy() {
-        mContext.unregisterReceiver(this);
+        WidgetUpdateDispatcher.getInstance(mContext).removeClient(this);
+        SelectedCities.getInstance(mContext).unregisterListener(mCitiesListener);
     }
 
-
     @Override
-    public void onReceive(Context context, Intent intent) {
+    public void onWidgetUpdate(Context context, int changes) {
         if (mId == AppWidgetManager.INVALID_APPWIDGET_ID) {
             return;
         }
-        mContext = context;
-        String action = intent.getAction();
         AppWidgetManager widgetManager = AppWidgetManager.getInstance(context);
-        if (action.equals("com.android.deskclock.NEXT_ALARM_TIME_SET")) {
-            // Update the next alarm text view
-            RemoteViews widget =
-                    new RemoteViews(context.getPackageName(), R.layout.digital_appwidget);
-            refreshAlarm(context, widget);
-            widgetManager.partiallyUpdateAppWidget(mId, widget);
-        } else if (action.equals("com.android.deskclock.worldclock.update")) {
-            // Reload the list of cities
-            mReloadCitiesList = true;
+        // The clocks tick by themselves, so a new minute only matters to the
+        // list when it moves some city to another day.
+        final boolean refreshList = (changes & WidgetUpdateDispatcher.CHANGE_TIME) != 0
+                || ((changes & WidgetUpdateDispatcher.CHANGE_CITIES) != 0 && mReloadCitiesList)
+                || ((changes & WidgetUpdateDispatcher.CHANGE_MINUTE) != 0
+                        && mAdapter.haveDaysChanged(System.currentTimeMillis()));
+        if (refreshList) {
             widgetManager.notifyAppWidgetViewDataChanged(mId, R.id.digital_appwidget_listview);
+        }
 
-        } else if (action.equals(Intent.ACTION_SCREEN_ON)) {
-            RemoteViews widget =
-                    new RemoteViews(context.getPackageName(), R.layout.digital_appwidget);
-            refreshAlarm(context, widget);
-            widgetManager.partiallyUpdateAppWidget(mId, widget);
-        } else {
+        RemoteViews widget = null;
+        if ((changes & WidgetUpdateDispatcher.CHANGE_TIME) != 0) {
             // For any time change or locale change, refresh all
-            widgetManager.notifyAppWidgetViewDataChanged(mId, R.id.digital_appwidget_listview);
-            RemoteViews widget =
-                    new RemoteViews(context.getPackageName(), R.layout.digital_appwidget);
+            widget = new RemoteViews(context.getPackageName(), R.layout.digital_appwidget);
             float ratio = WidgetUtils.getScaleRatio(context, null, mId);
             WidgetUtils.setClockSize(context, widget, ratio);
-            refreshAlarm(context, widget);
+            mAlarmShown = false;
+        }
+        if ((changes & WidgetUpdateDispatcher.CHANGE_SCREEN_ON) != 0) {
+            // Always push the next alarm again when the screen turns on.
+            mAlarmShown = false;
+        }
+        if ((changes & (WidgetUpdateDispatcher.CHANGE_ALARM
+                | WidgetUpdateDispatcher.CHANGE_TIME
+                | WidgetUpdateDispatcher.CHANGE_SCREEN_ON)) != 0) {
+            String nextAlarm = Settings.System.getString(context.getContentResolver(),
+                    Settings.System.NEXT_ALARM_FORMATTED);
+            if (!mAlarmShown || !TextUtils.equals(nextAlarm, mShownAlarm)) {
+                if (widget == null) {
+                    widget = new RemoteViews(context.getPackageName(), R.layout.digital_appwidget);
+                }
+                refreshAlarm(context, widget, nextAlarm);
+                mShownAlarm = nextAlarm;
+                mAlarmShown = true;
+            }
+        }
+        if (widget != null) {
             widgetManager.partiallyUpdateAppWidget(mId, widget);
         }
     }
 
-    private void refreshAlarm(Context c, RemoteViews widget) {
-        String nextAlarm = Settings.System.getString(c.getContentResolver(),
-                Settings.System.NEXT_ALARM_FORMATTED);
+    private void refreshAlarm(Context c, RemoteViews widget, String nextAlarm) {
         if (!TextUtils.isEmpty(nextAlarm)) {
             widget.setTextViewText(R.id.nextAlarm,
                     c.getString(R.string.control_set_alarm_with_existing, nextAlarm));
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.alarmclock;
+
+import java.util.ArrayList;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.android.deskclock.Alarms;
+import com.android.deskclock.worldclock.Cities;
+import com.android.deskclock.worldclock.TimeZoneOffsets;
+
+/**
+ * Process-wide receiver of the broadcasts that affect the digital widgets.
+ *
+ * A single receiver is shared by every widget. Broadcasts arriving close
+ * together are merged into one set of changes, which is handed to each widget
+ * once the burst is over so it can update only what they affect.
+ */
+final class WidgetUpdateDispatcher {
+
+    interface Client {
+        /**
+         * Called on the main thread with the CHANGE_ flags of the broadcasts
+         * received since the last call.
+         */
+        void onWidgetUpdate(Context context, int changes);
+    }
+
+    // A minute went by.
+    static final int CHANGE_MINUTE = 1 << 0;
+    // The next alarm may have changed.
+    static final int CHANGE_ALARM = 1 << 1;
+    // The selected world clock cities may have changed.
+    static final int CHANGE_CITIES = 1 << 2;
+    // The date, time, time zone or locale changed.
+    static final int CHANGE_TIME = 1 << 3;
+    // The screen turned on.
+    static final int CHANGE_SCREEN_ON = 1 << 4;
+
+    // How long to wait for more broadcasts before updating.
+    private static final long DEBOUNCE_MS = 250;
+
+    private static WidgetUpdateDispatcher sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Client> mClients = new ArrayList<Client>();
+    // Only used on the main thread.
+    private int mPendingChanges;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final String action = intent.getAction();
+            final int change;
+            if (Intent.ACTION_TIME_TICK.equals(action)) {
+                change = CHANGE_MINUTE;
+            } else if (Alarms.NEXT_ALARM_TIME_SET.equals(action)) {
+                change = CHANGE_ALARM;
+            } else if (Intent.ACTION_SCREEN_ON.equals(action)) {
+                change = CHANGE_SCREEN_ON;
+            } else if (Cities.WORLDCLOCK_UPDATE_INTENT.equals(action)) {
+                change = CHANGE_CITIES;
+            } else {
+                if (Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+                    TimeZoneOffsets.clear();
+                }
+                change = CHANGE_TIME;
+            }
+            if (mPendingChanges == 0) {
+                mHandler.postDelayed(mFlush, DEBOUNCE_MS);
+            }
+            mPendingChanges |= change;
+        }
+    };
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            final int changes = mPendingChanges;
+            mPendingChanges = 0;
+            final Client[] clients;
+            synchronized (WidgetUpdateDispatcher.this) {
+                clients = mClients.toArray(new Client[mClients.size()]);
+            }
+            for (Client c : clients) {
+                c.onWidgetUpdate(mContext, changes);
+            }
+        }
+    };
+
+    private WidgetUpdateDispatcher(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    static synchronized WidgetUpdateDispatcher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WidgetUpdateDispatcher(context);
+        }
+        return sInstance;
+    }
+
+    synchronized void addClient(Client client) {
+        if (mClients.contains(client)) {
+            return;
+        }
+        mClients.add(client);
+        if (mClients.size() == 1) {
+            final IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_DATE_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_SCREEN_ON);
+            filter.addAction(Intent.ACTION_TIME_TICK);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            filter.addAction(Alarms.NEXT_ALARM_TIME_SET);
+            filter.addAction(Cities.WORLDCLOCK_UPDATE_INTENT);
+            mContext.registerReceiver(mReceiver, filter, null, mHandler);
+        }
+    }
+
+    synchronized void removeClient(Client client) {
+        if (mClients.remove(client) && mClients.isEmpty()) {
+            mContext.unregisterReceiver(mReceiver);
+        }
+    }
+}
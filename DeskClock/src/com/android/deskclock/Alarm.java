@@ -16,9 +16,10 @@
 
 package com.android.deskclock;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.text.DateFormatSymbols;
 import java.util.Calendar;
-import java.util.HashMap;
 import java.util.HashSet;
 
 import android.content.Context;
@@ -65,6 +66,106 @@ public final class Alarm implements Parcelable {
     // end Parcelable apis
     //////////////////////////////
 
+    //////////////////////////////
+    // Compact binary encoding
+    //////////////////////////////
+    // Fixed layout used to pass an alarm through the AlarmManager: version,
+    // flags, days, hour, minutes, id, time, then the label and alert only if
+    // they are not the common empty label and default alert.
+    private static final byte ENCODING_VERSION = 1;
+    private static final int FLAG_ENABLED = 1 << 0;
+    private static final int FLAG_VIBRATE = 1 << 1;
+    private static final int FLAG_SILENT = 1 << 2;
+    private static final int FLAG_HAS_LABEL = 1 << 3;
+    private static final int FLAG_HAS_ALERT = 1 << 4;
+    private static final int FIXED_ENCODED_SIZE = 5 + 4 + 8;
+
+    private static final Uri DEFAULT_ALERT =
+            RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Encodes this alarm in the compact binary layout read by
+     * fromByteArray(). The size is worked out first so the fields are
+     * written straight into the returned array.
+     */
+    public byte[] toByteArray() {
+        final byte[] labelBytes = (label == null || label.length() == 0)
+                ? null : label.getBytes(UTF_8);
+        final byte[] alertBytes = (alert == null || alert.equals(DEFAULT_ALERT))
+                ? null : alert.toString().getBytes(UTF_8);
+        int flags = (enabled ? FLAG_ENABLED : 0) | (vibrate ? FLAG_VIBRATE : 0)
+                | (silent ? FLAG_SILENT : 0);
+        int size = FIXED_ENCODED_SIZE;
+        if (labelBytes != null) {
+            flags |= FLAG_HAS_LABEL;
+            size += 4 + labelBytes.length;
+        }
+        if (alertBytes != null) {
+            flags |= FLAG_HAS_ALERT;
+            size += 4 + alertBytes.length;
+        }
+
+        final byte[] out = new byte[size];
+        final ByteBuffer b = ByteBuffer.wrap(out);
+        b.put(ENCODING_VERSION);
+        b.put((byte) flags);
+        b.put((byte) daysOfWeek.getCoded());
+        b.put((byte) hour);
+        b.put((byte) minutes);
+        b.putInt(id);
+        b.putLong(time);
+        if (labelBytes != null) {
+            b.putInt(labelBytes.length);
+            b.put(labelBytes);
+        }
+        if (alertBytes != null) {
+            b.putInt(alertBytes.length);
+            b.put(alertBytes);
+        }
+        return out;
+    }
+
+    /**
+     * Decodes an alarm written by toByteArray(). Returns null if the data
+     * is not in a known encoding.
+     */
+    public static Alarm fromByteArray(byte[] data) {
+        if (data == null || data.length < FIXED_ENCODED_SIZE
+                || data[0] != ENCODING_VERSION) {
+            return null;
+        }
+        return new Alarm(ByteBuffer.wrap(data, 1, data.length - 1));
+    }
+
+    private Alarm(ByteBuffer b) {
+        final int flags = b.get();
+        enabled = (flags & FLAG_ENABLED) != 0;
+        vibrate = (flags & FLAG_VIBRATE) != 0;
+        silent = (flags & FLAG_SILENT) != 0;
+        daysOfWeek = new DaysOfWeek(b.get());
+        hour = b.get();
+        minutes = b.get();
+        id = b.getInt();
+        time = b.getLong();
+        label = (flags & FLAG_HAS_LABEL) != 0 ? readString(b) : "";
+        if ((flags & FLAG_HAS_ALERT) != 0) {
+            alert = Uri.parse(readString(b));
+        } else if (!silent) {
+            alert = DEFAULT_ALERT;
+        }
+    }
+
+    private static String readString(ByteBuffer b) {
+        final int length = b.getInt();
+        final String s = new String(b.array(), b.arrayOffset() + b.position(), length, UTF_8);
+        b.position(b.position() + length);
+        return s;
+    }
+    //////////////////////////////
+    // end Compact binary encoding
+    //////////////////////////////
+
     //////////////////////////////
     // Column definitions
     //////////////////////////////
@@ -151,6 +252,42 @@ public final class Alarm implements Parcelable {
         public static final int ALARM_MESSAGE_INDEX = 7;
         public static final int ALARM_ALERT_INDEX = 8;
     }
+
+    public static class SnoozeColumns implements BaseColumns {
+        /**
+         * The content:// style URL for the snoozes table. The _id of a
+         * snooze is the id of the snoozed alarm.
+         */
+        public static final Uri CONTENT_URI =
+                Uri.parse("content://com.android.deskclock/snooze");
+
+        /**
+         * The content:// style URL for all alarms joined with their snooze.
+         */
+        public static final Uri ALARMS_CONTENT_URI =
+                Uri.parse("content://com.android.deskclock/alarm_snooze");
+
+        /**
+         * Snooze time in UTC milliseconds from the epoch.
+         * <P>Type: INTEGER</P>
+         */
+        public static final String SNOOZE_TIME = "snoozetime";
+
+        static final String[] SNOOZE_QUERY_COLUMNS = { _ID, SNOOZE_TIME };
+
+        /**
+         * The alarm columns followed by the snooze time, which is null if the
+         * alarm is not snoozed. Used with ALARMS_CONTENT_URI.
+         */
+        static final String[] ALARM_SNOOZE_QUERY_COLUMNS = {
+            "alarms." + _ID, Columns.HOUR, Columns.MINUTES, Columns.DAYS_OF_WEEK,
+            Columns.ALARM_TIME, Columns.ENABLED, Columns.VIBRATE, Columns.MESSAGE,
+            Columns.ALERT, SNOOZE_TIME };
+
+        public static final int SNOOZE_ID_INDEX = 0;
+        public static final int SNOOZE_TIME_INDEX = 1;
+        public static final int ALARM_SNOOZE_TIME_INDEX = 9;
+    }
     //////////////////////////////
     // End column definitions
     //////////////////////////////
@@ -167,6 +304,11 @@ public final class Alarm implements Parcelable {
     public Uri        alert;
     public boolean    silent;
 
+    // Cached result of Alarms.calculateAlarm(Alarm). Not persisted.
+    long cachedAlertTime;
+    int cachedAlertKey = -1;
+    int cachedAlertGeneration = -1;
+
     @Override
     public String toString() {
         return "Alarm{" +
@@ -225,6 +367,19 @@ public final class Alarm implements Parcelable {
         silent = p.readInt() == 1;
     }
 
+    public Alarm(Alarm other) {
+        id = other.id;
+        enabled = other.enabled;
+        hour = other.hour;
+        minutes = other.minutes;
+        daysOfWeek = new DaysOfWeek(other.daysOfWeek.getCoded());
+        time = other.time;
+        vibrate = other.vibrate;
+        label = other.label;
+        alert = other.alert;
+        silent = other.silent;
+    }
+
     // Creates a default alarm at the current time.
     public Alarm() {
         id = -1;
@@ -280,10 +435,25 @@ public final class Alarm implements Parcelable {
         };
 
 
-        private static HashMap<Integer, Integer> DAY_TO_BIT_MASK = new HashMap<Integer, Integer>();
+        // Bit index of each Calendar day of week, indexed by Calendar.SUNDAY..SATURDAY.
+        private static final int[] DAY_TO_BIT_INDEX = new int[Calendar.SATURDAY + 1];
+
+        // Days from a given day until the first set day, indexed by
+        // (days bitmask << 3) | bit index of the given day.
+        private static final byte[] DAYS_UNTIL_SET = new byte[0x80 << 3];
+
         static {
             for (int i = 0; i < DAY_MAP.length; i++) {
-                DAY_TO_BIT_MASK.put(DAY_MAP[i], i);
+                DAY_TO_BIT_INDEX[DAY_MAP[i]] = i;
+            }
+            for (int days = 1; days < 0x80; days++) {
+                for (int today = 0; today < 7; today++) {
+                    int dayCount = 0;
+                    while ((days & (1 << ((today + dayCount) % 7))) == 0) {
+                        dayCount++;
+                    }
+                    DAYS_UNTIL_SET[(days << 3) | today] = (byte) dayCount;
+                }
             }
         }
 
@@ -352,7 +522,7 @@ public final class Alarm implements Parcelable {
          * @param set Whether to set or unset.
          */
         public void setDayOfWeek(int dayOfWeek, boolean set) {
-            final int bitIndex = DAY_TO_BIT_MASK.get(dayOfWeek);
+            final int bitIndex = DAY_TO_BIT_INDEX[dayOfWeek];
             set(bitIndex, set);
         }
 
@@ -405,16 +575,18 @@ public final class Alarm implements Parcelable {
             }
 
             int today = (c.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+            return getDaysUntilSet(mDays, today);
+        }
 
-            int day = 0;
-            int dayCount = 0;
-            for (; dayCount < 7; dayCount++) {
-                day = (today + dayCount) % 7;
-                if (isSet(day)) {
-                    break;
-                }
-            }
-            return dayCount;
+        /**
+         * Returns the number of days from the given day until the first day
+         * set in days, or 0 if no day is set.
+         *
+         * @param days days of week bitmask, as returned by getCoded()
+         * @param today bit index of the starting day, 0 for Monday
+         */
+        static int getDaysUntilSet(int days, int today) {
+            return DAYS_UNTIL_SET[((days & 0x7f) << 3) | today];
         }
 
         @Override
@@ -32,12 +32,13 @@ import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Rect;
 import android.graphics.Typeface;
-import android.media.Ringtone;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Vibrator;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.ActionMode;
 import android.view.ActionMode.Callback;
 import android.view.LayoutInflater;
@@ -69,7 +70,6 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
 
     private static final String KEY_EXPANDED_IDS = "expandedIds";
     private static final String KEY_REPEAT_CHECKED_IDS = "repeatCheckedIds";
-    private static final String KEY_RINGTONE_TITLE_CACHE = "ringtoneTitleCache";
     private static final String KEY_SELECTED_ALARMS = "selectedAlarms";
     private static final String KEY_DELETED_ALARM = "deletedAlarm";
     private static final String KEY_UNDO_SHOWING = "undoShowing";
@@ -80,7 +80,7 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
 
     private SwipeableListView mAlarmsList;
     private AlarmItemAdapter mAdapter;
-    private Bundle mRingtoneTitleCache; // Key: ringtone uri, value: ringtone title
+    private RingtoneTitles mRingtoneTitles;
     private ActionableToastBar mUndoBar;
     private ActionMode mActionMode;
 
@@ -112,7 +112,6 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
         if (savedState != null) {
             expandedIds = savedState.getIntArray(KEY_EXPANDED_IDS);
             repeatCheckedIds = savedState.getIntArray(KEY_REPEAT_CHECKED_IDS);
-            mRingtoneTitleCache = savedState.getBundle(KEY_RINGTONE_TITLE_CACHE);
             mDeletedAlarm = savedState.getParcelable(KEY_DELETED_ALARM);
             mUndoShowing = savedState.getBoolean(KEY_UNDO_SHOWING);
             selectedAlarms = savedState.getIntArray(KEY_SELECTED_ALARMS);
@@ -125,9 +124,7 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
                 this, expandedIds, repeatCheckedIds, selectedAlarms, previousDayMap, mAlarmsList);
         mAdapter.setLongClickListener(this);
 
-        if (mRingtoneTitleCache == null) {
-            mRingtoneTitleCache = new Bundle();
-        }
+        mRingtoneTitles = RingtoneTitles.getInstance(this);
 
         mAlarmsList.setAdapter(mAdapter);
         mAlarmsList.setVerticalScrollBarEnabled(true);
@@ -192,7 +189,6 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
         outState.putIntArray(KEY_EXPANDED_IDS, mAdapter.getExpandedArray());
         outState.putIntArray(KEY_REPEAT_CHECKED_IDS, mAdapter.getRepeatArray());
         outState.putIntArray(KEY_SELECTED_ALARMS, mAdapter.getSelectedAlarmsArray());
-        outState.putBundle(KEY_RINGTONE_TITLE_CACHE, mRingtoneTitleCache);
         outState.putParcelable(KEY_DELETED_ALARM, mDeletedAlarm);
         outState.putBoolean(KEY_UNDO_SHOWING, mUndoShowing);
         outState.putBundle(KEY_PREVIOUS_DAY_MAP, mAdapter.getPreviousDaysOfWeekMap());
@@ -323,19 +319,16 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
      * @param alarmId The alarm id to scroll to.
      */
     private void scrollToAlarm(int alarmId) {
-        for (int i = 0; i < mAdapter.getCount(); i++) {
-            long id = mAdapter.getItemId(i);
-            if (id == alarmId) {
-                mAdapter.setNewAlarm(alarmId);
-                mAlarmsList.smoothScrollToPositionFromTop(i, 0);
+        final int i = mAdapter.getPosition(alarmId);
+        if (i >= 0) {
+            mAdapter.setNewAlarm(alarmId);
+            mAlarmsList.smoothScrollToPositionFromTop(i, 0);
 
-                final int firstPositionId = mAlarmsList.getFirstVisiblePosition();
-                final int childId = i - firstPositionId;
+            final int firstPositionId = mAlarmsList.getFirstVisiblePosition();
+            final int childId = i - firstPositionId;
 
-                final View view = mAlarmsList.getChildAt(childId);
-                mAdapter.getView(i, view, mAlarmsList);
-                break;
-            }
+            final View view = mAlarmsList.getChildAt(childId);
+            mAdapter.getView(i, view, mAlarmsList);
         }
     }
 
@@ -414,7 +407,7 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
         mActionMode.setTitle(String.format(getString(R.string.alarms_selected), items));
     }
 
-    public class AlarmItemAdapter extends CursorAdapter {
+    public class AlarmItemAdapter extends CursorAdapter implements RingtoneTitles.Listener {
 
         private final Context mContext;
         private final LayoutInflater mFactory;
@@ -436,6 +429,15 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
 
         private final boolean mHasVibrator;
 
+        // Alarms of the current cursor by id, built as rows are bound. The cursor is replaced
+        // whenever the provider notifies a change, which clears them.
+        private final SparseArray<Alarm> mAlarms = new SparseArray<Alarm>();
+        // Position of each alarm of the current cursor by id.
+        private final SparseIntArray mPositions = new SparseIntArray();
+        // Repeat text and its description by coded days of week.
+        private final SparseArray<String> mDaysOfWeekText = new SparseArray<String>();
+        private final SparseArray<String> mDaysOfWeekDescription = new SparseArray<String>();
+
         // This determines the order in which it is shown and processed in the UI.
         private final int[] DAY_ORDER = new int[] {
                 Calendar.SUNDAY,
@@ -532,6 +534,57 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
             mLongClickListener = l;
         }
 
+        @Override
+        public Cursor swapCursor(Cursor newCursor) {
+            mAlarms.clear();
+            mPositions.clear();
+            if (newCursor != null && newCursor.moveToFirst()) {
+                do {
+                    mPositions.put(newCursor.getInt(Alarm.Columns.ALARM_ID_INDEX),
+                            newCursor.getPosition());
+                } while (newCursor.moveToNext());
+            }
+            return super.swapCursor(newCursor);
+        }
+
+        /**
+         * Returns the position of the alarm with the given id, or -1 if it isn't in the list.
+         */
+        public int getPosition(int alarmId) {
+            return mPositions.get(alarmId, -1);
+        }
+
+        // Returns the alarm of the cursor's current row, reading it only the first time.
+        private Alarm getAlarm(Cursor cursor) {
+            final int id = cursor.getInt(Alarm.Columns.ALARM_ID_INDEX);
+            Alarm alarm = mAlarms.get(id);
+            if (alarm == null) {
+                alarm = new Alarm(cursor);
+                mAlarms.put(id, alarm);
+            }
+            return alarm;
+        }
+
+        private String getDaysOfWeekText(Alarm.DaysOfWeek daysOfWeek) {
+            final int coded = daysOfWeek.getCoded();
+            String text = mDaysOfWeekText.get(coded);
+            if (text == null) {
+                text = daysOfWeek.toString(AlarmClock.this, false);
+                mDaysOfWeekText.put(coded, text);
+            }
+            return text;
+        }
+
+        private String getDaysOfWeekDescription(Alarm.DaysOfWeek daysOfWeek) {
+            final int coded = daysOfWeek.getCoded();
+            String description = mDaysOfWeekDescription.get(coded);
+            if (description == null) {
+                description = daysOfWeek.toAccessibilityString(AlarmClock.this);
+                mDaysOfWeekDescription.put(coded, description);
+            }
+            return description;
+        }
+
         @Override
         public View getView(int position, View convertView, ViewGroup parent) {
             if (!getCursor().moveToPosition(position)) {
@@ -600,7 +653,7 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
 
         @Override
         public void bindView(View view, Context context, final Cursor cursor) {
-            final Alarm alarm = new Alarm(cursor);
+            final Alarm alarm = getAlarm(cursor);
             final ItemHolder itemHolder = (ItemHolder) view.getTag();
             itemHolder.alarm = alarm;
 
@@ -677,11 +730,11 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
 
             String colons = "";
             // Set the repeat text or leave it blank if it does not repeat.
-            final String daysOfWeekStr = alarm.daysOfWeek.toString(AlarmClock.this, false);
+            final String daysOfWeekStr = getDaysOfWeekText(alarm.daysOfWeek);
             if (daysOfWeekStr != null && daysOfWeekStr.length() != 0) {
                 itemHolder.daysOfWeek.setText(daysOfWeekStr);
                 itemHolder.daysOfWeek.setContentDescription(
-                        alarm.daysOfWeek.toAccessibilityString(AlarmClock.this));
+                        getDaysOfWeekDescription(alarm.daysOfWeek));
                 itemHolder.daysOfWeek.setVisibility(View.VISIBLE);
                 colons = ": ";
                 itemHolder.daysOfWeek.setOnClickListener(new View.OnClickListener() {
@@ -978,23 +1031,20 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
 
 
         /**
-         * Does a read-through cache for ringtone titles.
+         * Returns the ringtone title from the title cache. If it isn't loaded yet, the rows are
+         * bound again once it is.
          *
          * @param uri The uri of the ringtone.
-         * @return The ringtone title. {@literal null} if no matching ringtone found.
+         * @return The ringtone title, or a placeholder while it loads.
          */
         private String getRingToneTitle(Uri uri) {
-            // Try the cache first
-            String title = mRingtoneTitleCache.getString(uri.toString());
-            if (title == null) {
-                // This is slow because a media player is created during Ringtone object creation.
-                Ringtone ringTone = RingtoneManager.getRingtone(mContext, uri);
-                title = ringTone.getTitle(mContext);
-                if (title != null) {
-                    mRingtoneTitleCache.putString(uri.toString(), title);
-                }
-            }
-            return title;
+            final String title = mRingtoneTitles.getTitle(uri, this);
+            return title != null ? title : mContext.getString(R.string.loading_ringtone);
+        }
+
+        @Override
+        public void onRingtoneTitleLoaded(Uri uri, String title) {
+            notifyDataSetChanged();
         }
 
         public void setNewAlarm(int alarmId) {
@@ -1037,13 +1087,15 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
         }
 
         private View getViewById(int id) {
-            for (int i = 0; i < mList.getCount(); i++) {
-                View v = mList.getChildAt(i);
-                if (v != null) {
-                    ItemHolder h = (ItemHolder)(v.getTag());
-                    if (h != null && h.alarm.id == id) {
-                        return v;
-                    }
+            final int position = getPosition(id);
+            if (position < 0) {
+                return null;
+            }
+            View v = mList.getChildAt(position - mList.getFirstVisiblePosition());
+            if (v != null) {
+                ItemHolder h = (ItemHolder)(v.getTag());
+                if (h != null && h.alarm.id == id) {
+                    return v;
                 }
             }
             return null;
@@ -1090,13 +1142,7 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
         }
 
         public void deleteSelectedAlarms() {
-            Integer ids [] = new Integer[mSelectedAlarms.size()];
-            int index = 0;
-            for (int id : mSelectedAlarms) {
-                ids[index] = id;
-                index ++;
-            }
-            asyncDeleteAlarm(ids);
+            asyncDeleteAlarm(getSelectedAlarmsArray());
             clearSelectedAlarms();
         }
 
@@ -1112,17 +1158,15 @@ public class AlarmClock extends Activity implements LoaderManager.LoaderCallback
         asyncAddAlarm(a, true);
     }
 
-    private void asyncDeleteAlarm(final Integer [] alarmIds) {
-        final AsyncTask<Integer, Void, Void> deleteTask = new AsyncTask<Integer, Void, Void>() {
+    private void asyncDeleteAlarm(final int [] alarmIds) {
+        final AsyncTask<Void, Void, Void> deleteTask = new AsyncTask<Void, Void, Void>() {
             @Override
-            protected Void doInBackground(Integer... ids) {
-                for (final int id : ids) {
-                    Alarms.deleteAlarm(AlarmClock.this, id);
-                }
+            protected Void doInBackground(Void... aVoid) {
+                Alarms.deleteAlarms(AlarmClock.this, alarmIds);
                 return null;
             }
         };
-        deleteTask.execute(alarmIds);
+        deleteTask.execute();
     }
 
     private void asyncDeleteAlarm(final Alarm alarm) {
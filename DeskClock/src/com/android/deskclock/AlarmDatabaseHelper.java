@@ -16,9 +16,12 @@
 
 package com.android.deskclock;
 
+import java.util.Set;
+
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
@@ -32,10 +35,17 @@ import android.net.Uri;
 class AlarmDatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "alarms.db";
-    private static final int DATABASE_VERSION = 5;
+    private static final int DATABASE_VERSION = 6;
+
+    // Snoozes were kept in these preferences before version 6.
+    private static final String PREF_SNOOZE_IDS = "snooze_ids";
+    private static final String PREF_SNOOZE_TIME = "snooze_time";
+
+    private final Context mContext;
 
     public AlarmDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mContext = context;
     }
 
     @Override
@@ -57,11 +67,26 @@ class AlarmDatabaseHelper extends SQLiteOpenHelper {
                 " message, alert) VALUES ";
         db.execSQL(insertMe + "(8, 30, 31, 0, 0, 1, '', '');");
         db.execSQL(insertMe + "(9, 00, 96, 0, 0, 1, '', '');");
+
+        createSnoozesTable(db);
+    }
+
+    private static void createSnoozesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE snoozes (" +
+                   "_id INTEGER PRIMARY KEY," +
+                   "snoozetime INTEGER);");
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion,
             int currentVersion) {
+        if (oldVersion == 5) {
+            // Version 6 only adds the snoozes table, keep the alarms.
+            if (Log.LOGV) Log.v("Adding snoozes table to alarms database");
+            createSnoozesTable(db);
+            migrateSnoozePreferences(db);
+            return;
+        }
         if (Log.LOGV) Log.v(
                 "Upgrading alarms database from version " +
                 oldVersion + " to " + currentVersion +
@@ -70,6 +95,32 @@ class AlarmDatabaseHelper extends SQLiteOpenHelper {
         onCreate(db);
     }
 
+    // Moves the snoozes saved in the preferences into the snoozes table.
+    private void migrateSnoozePreferences(SQLiteDatabase db) {
+        final SharedPreferences prefs =
+                mContext.getSharedPreferences(Alarms.PREFERENCES, 0);
+        final Set<String> snoozedIds = prefs.getStringSet(PREF_SNOOZE_IDS, null);
+        if (snoozedIds == null) {
+            return;
+        }
+        final SharedPreferences.Editor ed = prefs.edit();
+        final ContentValues values = new ContentValues(2);
+        for (String snoozedAlarm : snoozedIds) {
+            final String key = PREF_SNOOZE_TIME + snoozedAlarm;
+            final long time = prefs.getLong(key, -1);
+            ed.remove(key);
+            // An id without a snooze time isn't snoozed.
+            if (time <= 0) {
+                continue;
+            }
+            values.put(Alarm.SnoozeColumns._ID, Integer.parseInt(snoozedAlarm));
+            values.put(Alarm.SnoozeColumns.SNOOZE_TIME, time);
+            db.replace("snoozes", null, values);
+        }
+        ed.remove(PREF_SNOOZE_IDS);
+        ed.apply();
+    }
+
     Uri commonInsert(ContentValues values) {
         SQLiteDatabase db = getWritableDatabase();
         db.beginTransaction();
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+
+/**
+ * Process-wide index of schedulable alarms ordered by their next fire time.
+ *
+ * The index is loaded once from the database and then kept current by
+ * AlarmProvider as alarms and snoozes are inserted, updated and deleted, so
+ * picking the next alert is a lookup of the head of a sorted set instead of a
+ * scan of the whole alarms table.
+ */
+final class AlarmIndex {
+
+    private static AlarmIndex sInstance;
+
+    private static final class Entry implements Comparable<Entry> {
+        final Alarm alarm;
+        long snoozeTime = -1;
+        long fireTime;
+
+        Entry(Alarm alarm) {
+            this.alarm = alarm;
+        }
+
+        boolean isSnoozed() {
+            return snoozeTime != -1;
+        }
+
+        // An alarm is schedulable if it is enabled, or if it was snoozed.
+        // A snoozed non-repeating alarm is disabled in the database.
+        boolean isSchedulable() {
+            return alarm.enabled || isSnoozed();
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (fireTime != other.fireTime) {
+                return fireTime < other.fireTime ? -1 : 1;
+            }
+            return alarm.id - other.alarm.id;
+        }
+    }
+
+    private final HashMap<Integer, Entry> mEntries = new HashMap<Integer, Entry>();
+    private final TreeSet<Entry> mQueue = new TreeSet<Entry>();
+    private boolean mLoaded;
+
+    private AlarmIndex() {}
+
+    static synchronized AlarmIndex getInstance() {
+        if (sInstance == null) {
+            sInstance = new AlarmIndex();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Drops the current contents. The index is lazily reloaded from the
+     * database on next use. Called when the wall clock or timezone changes,
+     * since every precomputed fire time may be wrong.
+     */
+    synchronized void invalidate() {
+        mEntries.clear();
+        mQueue.clear();
+        mLoaded = false;
+    }
+
+    /**
+     * Returns the alarm that should fire next at or after now, with its time
+     * field set to the fire time (including snooze), or null if there is
+     * none. Alarms whose fire time has already passed are removed from the
+     * queue and added to expired so the caller can disable them.
+     */
+    synchronized Alarm getNextAlert(Context context, long now, List<Alarm> expired) {
+        ensureLoaded(context);
+        while (!mQueue.isEmpty()) {
+            final Entry head = mQueue.first();
+            if (head.fireTime >= now) {
+                return copyWithTime(head.alarm, head.fireTime);
+            }
+            mQueue.remove(head);
+            if (!head.isSnoozed() && head.alarm.time == 0) {
+                // A stale repeating alarm, move it to its next occurrence.
+                head.fireTime = Alarms.calculateAlarm(head.alarm);
+                mQueue.add(head);
+            } else {
+                expired.add(copyWithTime(head.alarm, head.fireTime));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Inserts or replaces the given alarm, as just written to the database.
+     */
+    synchronized void put(Alarm alarm) {
+        if (!mLoaded) {
+            return;
+        }
+        final Entry old = mEntries.remove(alarm.id);
+        final Entry entry = new Entry(alarm);
+        if (old != null) {
+            mQueue.remove(old);
+            entry.snoozeTime = old.snoozeTime;
+        }
+        mEntries.put(alarm.id, entry);
+        enqueue(entry);
+    }
+
+    synchronized void remove(int id) {
+        if (!mLoaded) {
+            return;
+        }
+        final Entry old = mEntries.remove(id);
+        if (old != null) {
+            mQueue.remove(old);
+        }
+    }
+
+    synchronized void setSnooze(int id, long time) {
+        if (!mLoaded) {
+            return;
+        }
+        final Entry entry = mEntries.get(id);
+        if (entry != null) {
+            mQueue.remove(entry);
+            entry.snoozeTime = time;
+            enqueue(entry);
+        }
+    }
+
+    synchronized void clearSnooze(int id) {
+        setSnooze(id, -1);
+    }
+
+    private void enqueue(Entry entry) {
+        if (!entry.isSchedulable()) {
+            return;
+        }
+        if (entry.isSnoozed()) {
+            entry.fireTime = entry.snoozeTime;
+        } else if (entry.alarm.time == 0) {
+            // A time of 0 indicates this is a repeating alarm.
+            entry.fireTime = Alarms.calculateAlarm(entry.alarm);
+        } else {
+            entry.fireTime = entry.alarm.time;
+        }
+        mQueue.add(entry);
+    }
+
+    private void ensureLoaded(Context context) {
+        if (mLoaded) {
+            return;
+        }
+        // A single query over the alarms joined with their snoozes.
+        final ContentResolver resolver = context.getContentResolver();
+        final Cursor cursor = resolver.query(Alarm.SnoozeColumns.ALARMS_CONTENT_URI,
+                Alarm.SnoozeColumns.ALARM_SNOOZE_QUERY_COLUMNS, null, null, null);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    final Entry entry = new Entry(new Alarm(cursor));
+                    if (!cursor.isNull(Alarm.SnoozeColumns.ALARM_SNOOZE_TIME_INDEX)) {
+                        entry.snoozeTime =
+                                cursor.getLong(Alarm.SnoozeColumns.ALARM_SNOOZE_TIME_INDEX);
+                    }
+                    mEntries.put(entry.alarm.id, entry);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        for (Entry entry : mEntries.values()) {
+            enqueue(entry);
+        }
+        mLoaded = true;
+    }
+
+    private static Alarm copyWithTime(Alarm alarm, long time) {
+        final Alarm copy = new Alarm(alarm);
+        copy.time = time;
+        return copy;
+    }
+}
@@ -23,7 +23,8 @@ import android.content.SharedPreferences;
 import android.os.PowerManager.WakeLock;
 import android.preference.PreferenceManager;
 
-import com.android.deskclock.timer.TimerObj;
+import com.android.deskclock.timer.TimerStore;
+import com.android.deskclock.worldclock.TimeZoneOffsets;
 
 public class AlarmInitReceiver extends BroadcastReceiver {
 
@@ -41,6 +42,15 @@ public class AlarmInitReceiver extends BroadcastReceiver {
         wl.acquire();
         AsyncHandler.post(new Runnable() {
             @Override public void run() {
+                // Every precomputed fire time is suspect once the wall clock
+                // or the timezone moves.
+                if (!action.equals(Intent.ACTION_LOCALE_CHANGED)) {
+                    Alarms.onClockChanged();
+                }
+                if (action.equals(Intent.ACTION_TIMEZONE_CHANGED)) {
+                    TimeZoneOffsets.clear();
+                }
+
                 // Remove the snooze alarm after a boot.
                 if (action.equals(Intent.ACTION_BOOT_COMPLETED)) {
                     Alarms.saveSnoozeAlert(context, Alarms.INVALID_ALARM_ID, -1);
@@ -50,13 +60,19 @@ public class AlarmInitReceiver extends BroadcastReceiver {
                     SharedPreferences prefs =
                             PreferenceManager.getDefaultSharedPreferences(context);
                     Log.v("AlarmInitReceiver - Cleaning old timer and stopwatch data");
-                    TimerObj.cleanTimersFromSharedPrefs(prefs);
+                    TimerStore.getInstance(context).deleteAllTimers();
                     Utils.clearSwSharedPref(prefs);
                 }
                 Alarms.setNextAlert(context);
-                result.finish();
-                Log.v("AlarmInitReceiver finished");
-                wl.release();
+                // Timers are deleted in the background, finish once they are.
+                TimerStore.getInstance(context).runAfterWrites(new Runnable() {
+                    @Override
+                    public void run() {
+                        result.finish();
+                        Log.v("AlarmInitReceiver finished");
+                        wl.release();
+                    }
+                });
             }
         });
     }
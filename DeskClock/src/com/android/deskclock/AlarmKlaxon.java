@@ -24,8 +24,6 @@ import android.content.res.Resources;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.media.MediaPlayer.OnErrorListener;
-import android.media.RingtoneManager;
-import android.net.Uri;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Message;
@@ -132,7 +130,7 @@ public class AlarmKlaxon extends Service {
             sendKillBroadcast(mCurrentAlarm);
         }
 
-        play(alarm);
+        play(alarm, intent);
         mCurrentAlarm = alarm;
         // Record the initial call state here so that the new alarm has the
         // newest state.
@@ -153,7 +151,7 @@ public class AlarmKlaxon extends Service {
     // Volume suggested by media team for in-call alarms.
     private static final float IN_CALL_VOLUME = 0.125f;
 
-    private void play(Alarm alarm) {
+    private void play(Alarm alarm, Intent intent) {
         // stop() checks to see if we are already playing.
         stop();
 
@@ -162,58 +160,36 @@ public class AlarmKlaxon extends Service {
         }
 
         if (!alarm.silent) {
-            Uri alert = alarm.alert;
             // Fall back on the default alarm if the database does not have an
             // alarm stored.
-            if (alert == null) {
-                alert = RingtoneManager.getDefaultUri(
-                        RingtoneManager.TYPE_ALARM);
-                if (Log.LOGV) {
-                    Log.v("Using default alarm: " + alert.toString());
-                }
-            }
-
-            // TODO: Reuse mMediaPlayer instead of creating a new one and/or use
-            // RingtoneManager.
-            mMediaPlayer = new MediaPlayer();
-            mMediaPlayer.setOnErrorListener(new OnErrorListener() {
-                @Override
-                public boolean onError(MediaPlayer mp, int what, int extra) {
-                    Log.e("Error occurred while playing audio.");
-                    mp.stop();
-                    mp.release();
+            final String alert = Alarms.getAlertSource(alarm);
+            final boolean inCall =
+                    mTelephonyManager.getCallState() != TelephonyManager.CALL_STATE_IDLE;
+
+            // Use the player prepared ahead of the alarm if it has the right
+            // alert.
+            final MediaPlayer prepared =
+                    AlertPlayers.takePrepared(AlertPlayers.SLOT_ALARM, alert);
+            boolean started = false;
+            if (prepared != null && inCall) {
+                prepared.release();
+            } else if (prepared != null) {
+                mMediaPlayer = prepared;
+                mMediaPlayer.setOnErrorListener(mErrorListener);
+                try {
+                    if (startAlarm(mMediaPlayer, true)) {
+                        AlertPlayers.recordLatency(intent, true);
+                    }
+                    started = true;
+                } catch (Exception ex) {
+                    Log.v("Could not start the prepared player");
+                    mMediaPlayer.release();
                     mMediaPlayer = null;
-                    return true;
                 }
-            });
+            }
 
-            try {
-                // Check if we are in a call. If we are, use the in-call alarm
-                // resource at a low volume to not disrupt the call.
-                if (mTelephonyManager.getCallState()
-                        != TelephonyManager.CALL_STATE_IDLE) {
-                    Log.v("Using the in-call alarm");
-                    mMediaPlayer.setVolume(IN_CALL_VOLUME, IN_CALL_VOLUME);
-                    setDataSourceFromResource(getResources(), mMediaPlayer,
-                            R.raw.in_call_alarm);
-                } else {
-                    mMediaPlayer.setDataSource(this, alert);
-                }
-                startAlarm(mMediaPlayer);
-            } catch (Exception ex) {
-                Log.v("Using the fallback ringtone");
-                // The alert may be on the sd card which could be busy right
-                // now. Use the fallback ringtone.
-                try {
-                    // Must reset the media player to clear the error state.
-                    mMediaPlayer.reset();
-                    setDataSourceFromResource(getResources(), mMediaPlayer,
-                            R.raw.fallbackring);
-                    startAlarm(mMediaPlayer);
-                } catch (Exception ex2) {
-                    // At this point we just don't play anything.
-                    Log.e("Failed to play fallback ringtone", ex2);
-                }
+            if (!started) {
+                playCold(alert, inCall, intent);
             }
         }
 
@@ -229,19 +205,70 @@ public class AlarmKlaxon extends Service {
         mStartTime = System.currentTimeMillis();
     }
 
-    // Do the common stuff when starting the alarm.
-    private void startAlarm(MediaPlayer player)
+    // Creates and starts a player for the alert.
+    private void playCold(String alert, boolean inCall, Intent intent) {
+        mMediaPlayer = new MediaPlayer();
+        mMediaPlayer.setOnErrorListener(mErrorListener);
+
+        try {
+            // Check if we are in a call. If we are, use the in-call alarm
+            // resource at a low volume to not disrupt the call.
+            if (inCall) {
+                Log.v("Using the in-call alarm");
+                mMediaPlayer.setVolume(IN_CALL_VOLUME, IN_CALL_VOLUME);
+                setDataSourceFromResource(getResources(), mMediaPlayer,
+                        R.raw.in_call_alarm);
+            } else {
+                AlertPlayers.setDataSource(this, mMediaPlayer, alert);
+            }
+            if (startAlarm(mMediaPlayer, false)) {
+                AlertPlayers.recordLatency(intent, false);
+            }
+        } catch (Exception ex) {
+            Log.v("Using the fallback ringtone");
+            // The alert may be on the sd card which could be busy right
+            // now. Use the fallback ringtone.
+            try {
+                // Must reset the media player to clear the error state.
+                mMediaPlayer.reset();
+                setDataSourceFromResource(getResources(), mMediaPlayer,
+                        R.raw.fallbackring);
+                startAlarm(mMediaPlayer, false);
+            } catch (Exception ex2) {
+                // At this point we just don't play anything.
+                Log.e("Failed to play fallback ringtone", ex2);
+            }
+        }
+    }
+
+    private final OnErrorListener mErrorListener = new OnErrorListener() {
+        @Override
+        public boolean onError(MediaPlayer mp, int what, int extra) {
+            Log.e("Error occurred while playing audio.");
+            mp.stop();
+            mp.release();
+            mMediaPlayer = null;
+            return true;
+        }
+    };
+
+    // Do the common stuff when starting the alarm. Returns true if the player was started.
+    private boolean startAlarm(MediaPlayer player, boolean prepared)
             throws java.io.IOException, IllegalArgumentException,
                    IllegalStateException {
         final AudioManager audioManager = (AudioManager)getSystemService(Context.AUDIO_SERVICE);
         // do not play alarms if stream volume is 0
         // (typically because ringer mode is silent).
         if (audioManager.getStreamVolume(AudioManager.STREAM_ALARM) != 0) {
-            player.setAudioStreamType(AudioManager.STREAM_ALARM);
-            player.setLooping(true);
-            player.prepare();
+            if (!prepared) {
+                player.setAudioStreamType(AudioManager.STREAM_ALARM);
+                player.setLooping(true);
+                player.prepare();
+            }
             player.start();
+            return true;
         }
+        return false;
     }
 
     private void setDataSourceFromResource(Resources resources,
@@ -17,10 +17,8 @@
 package com.android.deskclock;
 
 import android.content.Context;
-import android.media.Ringtone;
 import android.media.RingtoneManager;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.preference.RingtonePreference;
 import android.provider.Settings;
 import android.util.AttributeSet;
@@ -29,10 +27,9 @@ import android.util.AttributeSet;
  * The RingtonePreference does not have a way to get/set the current ringtone so
  * we override onSaveRingtone and onRestoreRingtone to get the same behavior.
  */
-public class AlarmPreference extends RingtonePreference {
+public class AlarmPreference extends RingtonePreference implements RingtoneTitles.Listener {
     private Uri mAlert;
     private boolean mChangeDefault;
-    private AsyncTask mRingtoneTask;
 
     public AlarmPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -61,38 +58,25 @@ public class AlarmPreference extends RingtonePreference {
     public void setAlert(Uri alert) {
         mAlert = alert;
         if (alert != null) {
-            setSummary(R.string.loading_ringtone);
-            if (mRingtoneTask != null) {
-                mRingtoneTask.cancel(true);
+            final String title = RingtoneTitles.getInstance(getContext()).getTitle(alert, this);
+            if (title != null) {
+                setSummary(title);
+            } else {
+                setSummary(R.string.loading_ringtone);
             }
-            mRingtoneTask = new AsyncTask<Uri, Void, String>() {
-                @Override
-                protected String doInBackground(Uri... params) {
-                    Ringtone r = RingtoneManager.getRingtone(
-                            getContext(), params[0]);
-                    if (r == null) {
-                        r = RingtoneManager.getRingtone(getContext(),
-                                Settings.System.DEFAULT_ALARM_ALERT_URI);
-                    }
-                    if (r != null) {
-                        return r.getTitle(getContext());
-                    }
-                    return null;
-                }
-
-                @Override
-                protected void onPostExecute(String title) {
-                    if (!isCancelled()) {
-                        setSummary(title);
-                        mRingtoneTask = null;
-                    }
-                }
-            }.execute(alert);
         } else {
             setSummary(R.string.silent_alarm_summary);
         }
     }
 
+    @Override
+    public void onRingtoneTitleLoaded(Uri uri, String title) {
+        // Ignore titles of alerts that were replaced while loading.
+        if (uri.equals(mAlert)) {
+            setSummary(title);
+        }
+    }
+
     public Uri getAlert() {
         return mAlert;
     }
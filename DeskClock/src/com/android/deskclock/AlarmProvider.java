@@ -16,10 +16,17 @@
 
 package com.android.deskclock;
 
+import java.util.ArrayList;
+
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
@@ -28,14 +35,41 @@ import android.text.TextUtils;
 public class AlarmProvider extends ContentProvider {
     private AlarmDatabaseHelper mOpenHelper;
 
+    // Set while a bulkInsert or applyBatch runs on the calling thread, so the
+    // single row operations defer their change notification to the end.
+    private final ThreadLocal<Boolean> mInBatch = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+    private final ThreadLocal<Boolean> mBatchChanged = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+    // Changes to the AlarmIndex made while the calling thread has a write
+    // transaction open, or null. They are only applied once the transaction
+    // ends: AlarmIndex queries this provider while holding its lock, so
+    // taking that lock with the database locked could deadlock.
+    private final ThreadLocal<ArrayList<Runnable>> mIndexChanges =
+            new ThreadLocal<ArrayList<Runnable>>();
+
     private static final int ALARMS = 1;
     private static final int ALARMS_ID = 2;
+    private static final int SNOOZES = 3;
+    private static final int SNOOZES_ID = 4;
+    private static final int ALARMS_SNOOZE = 5;
     private static final UriMatcher sURLMatcher = new UriMatcher(
             UriMatcher.NO_MATCH);
 
     static {
         sURLMatcher.addURI("com.android.deskclock", "alarm", ALARMS);
         sURLMatcher.addURI("com.android.deskclock", "alarm/#", ALARMS_ID);
+        sURLMatcher.addURI("com.android.deskclock", "snooze", SNOOZES);
+        sURLMatcher.addURI("com.android.deskclock", "snooze/#", SNOOZES_ID);
+        sURLMatcher.addURI("com.android.deskclock", "alarm_snooze", ALARMS_SNOOZE);
     }
 
     public AlarmProvider() {
@@ -63,6 +97,17 @@ public class AlarmProvider extends ContentProvider {
                 qb.appendWhere("_id=");
                 qb.appendWhere(url.getPathSegments().get(1));
                 break;
+            case SNOOZES:
+                qb.setTables("snoozes");
+                break;
+            case SNOOZES_ID:
+                qb.setTables("snoozes");
+                qb.appendWhere("_id=");
+                qb.appendWhere(url.getPathSegments().get(1));
+                break;
+            case ALARMS_SNOOZE:
+                qb.setTables("alarms LEFT OUTER JOIN snoozes ON (alarms._id = snoozes._id)");
+                break;
             default:
                 throw new IllegalArgumentException("Unknown URL " + url);
         }
@@ -88,6 +133,12 @@ public class AlarmProvider extends ContentProvider {
                 return "vnd.android.cursor.dir/alarms";
             case ALARMS_ID:
                 return "vnd.android.cursor.item/alarms";
+            case SNOOZES:
+                return "vnd.android.cursor.dir/snoozes";
+            case SNOOZES_ID:
+                return "vnd.android.cursor.item/snoozes";
+            case ALARMS_SNOOZE:
+                return "vnd.android.cursor.dir/alarm_snoozes";
             default:
                 throw new IllegalArgumentException("Unknown URL");
         }
@@ -100,10 +151,33 @@ public class AlarmProvider extends ContentProvider {
         int match = sURLMatcher.match(url);
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         switch (match) {
+            case ALARMS: {
+                // Multi-row update. Remember which rows matched before the
+                // update since the new values may no longer match the where.
+                final boolean indexOwner = beginIndexChanges();
+                boolean successful = false;
+                db.beginTransaction();
+                try {
+                    final String ids = queryIds(db, "alarms", where, whereArgs);
+                    count = db.update("alarms", values, where, whereArgs);
+                    if (count > 0) {
+                        updateIndex(db, "_id IN (" + ids + ")");
+                    }
+                    db.setTransactionSuccessful();
+                    successful = true;
+                } finally {
+                    db.endTransaction();
+                    endIndexChanges(indexOwner, successful);
+                }
+                break;
+            }
             case ALARMS_ID: {
                 String segment = url.getPathSegments().get(1);
                 rowId = Long.parseLong(segment);
                 count = db.update("alarms", values, "_id=" + rowId, null);
+                if (count > 0) {
+                    updateIndex(db, rowId);
+                }
                 break;
             }
             default: {
@@ -112,29 +186,122 @@ public class AlarmProvider extends ContentProvider {
             }
         }
         if (Log.LOGV) Log.v("*** notifyChange() rowId: " + rowId + " url " + url);
-        getContext().getContentResolver().notifyChange(url, null);
+        notifyChange(url);
         return count;
     }
 
     @Override
     public Uri insert(Uri url, ContentValues initialValues) {
-        if (sURLMatcher.match(url) != ALARMS) {
+        final int match = sURLMatcher.match(url);
+        if (match == SNOOZES) {
+            return insertSnooze(initialValues);
+        } else if (match != ALARMS) {
             throw new IllegalArgumentException("Cannot insert into URL: " + url);
         }
 
         Uri newUrl = mOpenHelper.commonInsert(initialValues);
-        getContext().getContentResolver().notifyChange(newUrl, null);
+        updateIndex(mOpenHelper.getReadableDatabase(), ContentUris.parseId(newUrl));
+        notifyChange(newUrl);
+        return newUrl;
+    }
+
+    // Inserts or replaces the snooze of one alarm in a single statement.
+    private Uri insertSnooze(ContentValues values) {
+        final Integer id = values.getAsInteger(Alarm.SnoozeColumns._ID);
+        final Long time = values.getAsLong(Alarm.SnoozeColumns.SNOOZE_TIME);
+        if (id == null || time == null) {
+            throw new IllegalArgumentException("Snooze requires an id and a time: " + values);
+        }
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        if (db.replace("snoozes", null, values) < 0) {
+            throw new SQLException("Failed to insert snooze");
+        }
+        changeIndex(new Runnable() {
+            @Override
+            public void run() {
+                AlarmIndex.getInstance().setSnooze(id, time);
+            }
+        });
+
+        Uri newUrl = ContentUris.withAppendedId(Alarm.SnoozeColumns.CONTENT_URI, id);
+        notifyChange(newUrl);
         return newUrl;
     }
 
+    @Override
+    public int bulkInsert(Uri url, ContentValues[] values) {
+        if (sURLMatcher.match(url) != ALARMS) {
+            throw new IllegalArgumentException("Cannot insert into URL: " + url);
+        }
+
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        boolean successful = false;
+        mInBatch.set(true);
+        final boolean indexOwner = beginIndexChanges();
+        db.beginTransaction();
+        try {
+            for (ContentValues initialValues : values) {
+                insert(url, initialValues);
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            db.endTransaction();
+            endIndexChanges(indexOwner, successful);
+            endBatch(successful);
+        }
+        return values.length;
+    }
+
+    /**
+     * Applies all operations in a single transaction and sends one change
+     * notification for the whole batch instead of one per operation.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        boolean successful = false;
+        mInBatch.set(true);
+        final boolean indexOwner = beginIndexChanges();
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            db.endTransaction();
+            endIndexChanges(indexOwner, successful);
+            endBatch(successful);
+        }
+    }
+
     public int delete(Uri url, String where, String[] whereArgs) {
         SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         int count;
         long rowId = 0;
         switch (sURLMatcher.match(url)) {
-            case ALARMS:
-                count = db.delete("alarms", where, whereArgs);
+            case ALARMS: {
+                final boolean indexOwner = beginIndexChanges();
+                boolean successful = false;
+                db.beginTransaction();
+                try {
+                    final String ids = queryIds(db, "alarms", where, whereArgs);
+                    count = db.delete("alarms", where, whereArgs);
+                    if (count > 0) {
+                        for (String id : TextUtils.split(ids, ",")) {
+                            removeFromIndex(Integer.parseInt(id));
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                    successful = true;
+                } finally {
+                    db.endTransaction();
+                    endIndexChanges(indexOwner, successful);
+                }
                 break;
+            }
             case ALARMS_ID:
                 String segment = url.getPathSegments().get(1);
                 rowId = Long.parseLong(segment);
@@ -144,12 +311,192 @@ public class AlarmProvider extends ContentProvider {
                     where = "_id=" + segment + " AND (" + where + ")";
                 }
                 count = db.delete("alarms", where, whereArgs);
+                if (count > 0) {
+                    removeFromIndex((int) rowId);
+                }
+                break;
+            case SNOOZES: {
+                final boolean indexOwner = beginIndexChanges();
+                boolean successful = false;
+                db.beginTransaction();
+                try {
+                    final String ids = queryIds(db, "snoozes", where, whereArgs);
+                    count = db.delete("snoozes", where, whereArgs);
+                    if (count > 0) {
+                        for (String id : TextUtils.split(ids, ",")) {
+                            clearSnoozeInIndex(Integer.parseInt(id));
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                    successful = true;
+                } finally {
+                    db.endTransaction();
+                    endIndexChanges(indexOwner, successful);
+                }
+                break;
+            }
+            case SNOOZES_ID:
+                rowId = Long.parseLong(url.getPathSegments().get(1));
+                count = db.delete("snoozes", "_id=" + rowId, null);
+                if (count > 0) {
+                    clearSnoozeInIndex((int) rowId);
+                }
                 break;
             default:
                 throw new IllegalArgumentException("Cannot delete from URL: " + url);
         }
 
-        getContext().getContentResolver().notifyChange(url, null);
+        notifyChange(url);
         return count;
     }
+
+    // Sends the change notification now, or defers it to the end of the
+    // current batch. A batch always notifies the whole table.
+    private void notifyChange(Uri url) {
+        if (mInBatch.get()) {
+            mBatchChanged.set(true);
+        } else {
+            getContext().getContentResolver().notifyChange(url, null);
+        }
+    }
+
+    private void endBatch(boolean successful) {
+        final boolean changed = mBatchChanged.get();
+        mInBatch.set(false);
+        mBatchChanged.set(false);
+        // A batch that rolled back changed nothing.
+        if (changed && successful) {
+            if (Log.LOGV) Log.v("*** notifyChange() batch url " + Alarm.Columns.CONTENT_URI);
+            getContext().getContentResolver().notifyChange(Alarm.Columns.CONTENT_URI, null);
+        }
+    }
+
+    // Starts queueing the index changes of the calling thread, unless an
+    // outer transaction already does. Returns whether the caller is the one
+    // that has to pass true to endIndexChanges().
+    private boolean beginIndexChanges() {
+        if (mIndexChanges.get() != null) {
+            return false;
+        }
+        mIndexChanges.set(new ArrayList<Runnable>());
+        return true;
+    }
+
+    // Applies the queued index changes once the transaction is over, or drops
+    // them if it rolled back.
+    private void endIndexChanges(boolean owner, boolean successful) {
+        if (!owner) {
+            return;
+        }
+        final ArrayList<Runnable> changes = mIndexChanges.get();
+        mIndexChanges.set(null);
+        if (successful) {
+            for (Runnable change : changes) {
+                change.run();
+            }
+        }
+    }
+
+    // Changes the index now, or once the open transaction ends.
+    private void changeIndex(Runnable change) {
+        final ArrayList<Runnable> changes = mIndexChanges.get();
+        if (changes != null) {
+            changes.add(change);
+        } else {
+            change.run();
+        }
+    }
+
+    private void putInIndex(final Alarm alarm) {
+        changeIndex(new Runnable() {
+            @Override
+            public void run() {
+                AlarmIndex.getInstance().put(alarm);
+            }
+        });
+    }
+
+    private void invalidateIndex() {
+        changeIndex(new Runnable() {
+            @Override
+            public void run() {
+                AlarmIndex.getInstance().invalidate();
+            }
+        });
+    }
+
+    private void removeFromIndex(final int id) {
+        changeIndex(new Runnable() {
+            @Override
+            public void run() {
+                AlarmIndex.getInstance().remove(id);
+            }
+        });
+    }
+
+    private void clearSnoozeInIndex(final int id) {
+        changeIndex(new Runnable() {
+            @Override
+            public void run() {
+                AlarmIndex.getInstance().clearSnooze(id);
+            }
+        });
+    }
+
+    // Returns the comma separated ids of the rows matching the selection.
+    private static String queryIds(SQLiteDatabase db, String table, String where,
+            String[] whereArgs) {
+        final Cursor cursor = db.query(table, new String[] { Alarm.Columns._ID },
+                where, whereArgs, null, null, null);
+        final StringBuilder ids = new StringBuilder();
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    if (ids.length() > 0) ids.append(',');
+                    ids.append(cursor.getLong(0));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return ids.toString();
+    }
+
+    /**
+     * Reads back the row that was just written and hands it to the next alert
+     * index, so the index never needs to requery the whole table.
+     */
+    private void updateIndex(SQLiteDatabase db, long rowId) {
+        final Cursor cursor = db.query("alarms", Alarm.Columns.ALARM_QUERY_COLUMNS,
+                "_id=" + rowId, null, null, null, null);
+        if (cursor == null) {
+            invalidateIndex();
+            return;
+        }
+        try {
+            if (cursor.moveToFirst()) {
+                putInIndex(new Alarm(cursor));
+            } else {
+                removeFromIndex((int) rowId);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void updateIndex(SQLiteDatabase db, String selection) {
+        final Cursor cursor = db.query("alarms", Alarm.Columns.ALARM_QUERY_COLUMNS,
+                selection, null, null, null, null);
+        if (cursor == null) {
+            invalidateIndex();
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                putInIndex(new Alarm(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
 }
@@ -26,6 +26,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Parcel;
 import android.os.PowerManager.WakeLock;
+import android.os.SystemClock;
 
 /**
  * Glue class: connects AlarmAlert IntentReceiver to AlarmAlert
@@ -39,19 +40,33 @@ public class AlarmReceiver extends BroadcastReceiver {
 
     @Override
     public void onReceive(final Context context, final Intent intent) {
+        final long receivedAt = SystemClock.elapsedRealtime();
         final PendingResult result = goAsync();
         final WakeLock wl = AlarmAlertWakeLock.createPartialWakeLock(context);
         wl.acquire();
-        AsyncHandler.post(new Runnable() {
+        final Runnable done = new Runnable() {
             @Override public void run() {
-                handleIntent(context, intent);
                 result.finish();
                 wl.release();
             }
+        };
+        if (AlertPlayers.PREPARE_ALERT_ACTION.equals(intent.getAction())) {
+            // An alert is due soon, get its sound ready. This may block for a
+            // while, so it isn't done on the thread that handles the alarms.
+            AlertPlayers.prepareLater(context,
+                    intent.getIntExtra(AlertPlayers.EXTRA_SLOT, AlertPlayers.SLOT_ALARM),
+                    intent.getStringExtra(AlertPlayers.EXTRA_SOURCE), done);
+            return;
+        }
+        AsyncHandler.post(new Runnable() {
+            @Override public void run() {
+                handleIntent(context, intent, receivedAt);
+                done.run();
+            }
         });
     }
 
-    private void handleIntent(Context context, Intent intent) {
+    private void handleIntent(Context context, Intent intent, long receivedAt) {
         if (Alarms.ALARM_KILLED.equals(intent.getAction())) {
             // The alarm has been killed, update the notification
             updateNotification(context, (Alarm)
@@ -87,8 +102,11 @@ public class AlarmReceiver extends BroadcastReceiver {
         // fills in the Intent to add some extra data, it must unparcel the
         // Alarm object. It throws a ClassNotFoundException when unparcelling.
         // To avoid this, do the marshalling ourselves.
+        final byte[] encoded = intent.getByteArrayExtra(Alarms.ALARM_ENCODED_DATA);
         final byte[] data = intent.getByteArrayExtra(Alarms.ALARM_RAW_DATA);
-        if (data != null) {
+        if (encoded != null) {
+            alarm = Alarm.fromByteArray(encoded);
+        } else if (data != null) {
             Parcel in = Parcel.obtain();
             in.unmarshall(data, 0, data.length);
             in.setDataPosition(0);
@@ -146,6 +164,7 @@ public class AlarmReceiver extends BroadcastReceiver {
         // Play the alarm alert and vibrate the device.
         Intent playAlarm = new Intent(Alarms.ALARM_ALERT_ACTION);
         playAlarm.putExtra(Alarms.ALARM_INTENT_EXTRA, alarm);
+        playAlarm.putExtra(AlertPlayers.EXTRA_FIRED_AT, receivedAt);
         context.startService(playAlarm);
 
         // Trigger a notification that, when clicked, will show the alarm alert
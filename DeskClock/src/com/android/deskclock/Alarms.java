@@ -16,9 +16,11 @@
 
 package com.android.deskclock;
 
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.app.AlarmManager;
 import android.app.NotificationManager;
@@ -29,10 +31,9 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.CursorLoader;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.media.RingtoneManager;
 import android.net.Uri;
-import android.os.Parcel;
 import android.provider.Settings;
 import android.text.format.DateFormat;
 
@@ -91,8 +92,10 @@ public class Alarms {
     // the Intent extras.
     public static final String ALARM_RAW_DATA = "intent.extra.alarm_raw";
 
-    private static final String PREF_SNOOZE_IDS = "snooze_ids";
-    private static final String PREF_SNOOZE_TIME = "snooze_time";
+    // This extra is the Alarm object in the compact encoding written by
+    // Alarm.toByteArray(). It replaces ALARM_RAW_DATA, which is only still
+    // read for alerts scheduled by an older version.
+    public static final String ALARM_ENCODED_DATA = "intent.extra.alarm_encoded";
 
     private final static String DM12 = "E h:mm aa";
     private final static String DM24 = "E kk:mm";
@@ -137,6 +140,29 @@ public class Alarms {
         setNextAlert(context);
     }
 
+    /**
+     * Removes several existing Alarms with a single delete. Disables the
+     * snooze of any of them with a single delete too and sets the next alert
+     * once.
+     */
+    public static void deleteAlarms(Context context, int[] alarmIds) {
+        final StringBuilder ids = new StringBuilder(" IN (");
+        int count = 0;
+        for (int alarmId : alarmIds) {
+            if (alarmId == INVALID_ALARM_ID) continue;
+            if (count++ > 0) ids.append(',');
+            ids.append(alarmId);
+        }
+        if (count == 0) return;
+        ids.append(')');
+
+        /* If any alarm is snoozing, lose it */
+        clearSnoozes(context, Alarm.SnoozeColumns._ID + ids);
+        context.getContentResolver().delete(Alarm.Columns.CONTENT_URI,
+                Alarm.Columns._ID + ids, null);
+
+        setNextAlert(context);
+    }
 
     public static CursorLoader getAlarmsCursorLoader(Context context) {
         return new CursorLoader(context, Alarm.Columns.CONTENT_URI,
@@ -193,17 +219,7 @@ public class Alarms {
     private static void clearSnoozeIfNeeded(Context context, long alarmTime) {
         // If this alarm fires before the next snooze, clear the snooze to
         // enable this alarm.
-        SharedPreferences prefs = context.getSharedPreferences(PREFERENCES, 0);
-
-        // Get the list of snoozed alarms
-        final Set<String> snoozedIds = prefs.getStringSet(PREF_SNOOZE_IDS, new HashSet<String>());
-        for (String snoozedAlarm : snoozedIds) {
-            final long snoozeTime = prefs.getLong(getAlarmPrefSnoozeTimeKey(snoozedAlarm), 0);
-            if (alarmTime < snoozeTime) {
-                final int alarmId = Integer.parseInt(snoozedAlarm);
-                clearSnoozePreference(context, prefs, alarmId);
-            }
-        }
+        clearSnoozes(context, Alarm.SnoozeColumns.SNOOZE_TIME + " > " + alarmTime);
     }
 
     /**
@@ -309,62 +325,19 @@ public class Alarms {
     }
 
     private static Alarm calculateNextAlert(final Context context) {
-        long minTime = Long.MAX_VALUE;
-        long now = System.currentTimeMillis();
-        final SharedPreferences prefs = context.getSharedPreferences(PREFERENCES, 0);
-
-        Set<Alarm> alarms = new HashSet<Alarm>();
+        final long now = System.currentTimeMillis();
+        final List<Alarm> expired = new ArrayList<Alarm>();
 
-        // We need to to build the list of alarms from both the snoozed list and the scheduled
-        // list.  For a non-repeating alarm, when it goes of, it becomes disabled.  A snoozed
+        // The index holds both the enabled alarms and the snoozed ones. For a
+        // non-repeating alarm, when it goes of, it becomes disabled. A snoozed
         // non-repeating alarm is not in the active list in the database.
+        final Alarm alarm = AlarmIndex.getInstance().getNextAlert(context, now, expired);
 
-        // first go through the snoozed alarms
-        final Set<String> snoozedIds = prefs.getStringSet(PREF_SNOOZE_IDS, new HashSet<String>());
-        for (String snoozedAlarm : snoozedIds) {
-            final int alarmId = Integer.parseInt(snoozedAlarm);
-            final Alarm a = getAlarm(context.getContentResolver(), alarmId);
-            alarms.add(a);
-        }
-
-        // Now add the scheduled alarms
-        final Cursor cursor = getFilteredAlarmsCursor(context.getContentResolver());
-        if (cursor != null) {
-            try {
-                if (cursor.moveToFirst()) {
-                    do {
-                        final Alarm a = new Alarm(cursor);
-                        alarms.add(a);
-                    } while (cursor.moveToNext());
-                }
-            } finally {
-                cursor.close();
-            }
-        }
-
-        Alarm alarm = null;
-
-        for (Alarm a : alarms) {
-            // A time of 0 indicates this is a repeating alarm, so
-            // calculate the time to get the next alert.
-            if (a.time == 0) {
-                a.time = calculateAlarm(a);
-            }
-
-            // Update the alarm if it has been snoozed
-            updateAlarmTimeForSnooze(prefs, a);
-
-            if (a.time < now) {
-                Log.v("Disabling expired alarm set for " + Log.formatTime(a.time));
-                // Expired alarm, disable it and move along.
-                enableAlarmInternal(context, a, false);
-                continue;
-            }
-            if (a.time < minTime) {
-                minTime = a.time;
-                alarm = a;
-            }
+        for (Alarm a : expired) {
+            Log.v("Disabling expired alarm set for " + Log.formatTime(a.time));
         }
+        // Expired alarms, disable them and move along.
+        disableAlarmsInternal(context, expired);
 
         return alarm;
     }
@@ -376,6 +349,7 @@ public class Alarms {
     public static void disableExpiredAlarms(final Context context) {
         Cursor cur = getFilteredAlarmsCursor(context.getContentResolver());
         long now = System.currentTimeMillis();
+        final List<Alarm> expired = new ArrayList<Alarm>();
 
         try {
             if (cur.moveToFirst()) {
@@ -386,13 +360,39 @@ public class Alarms {
                     if (alarm.time != 0 && alarm.time < now) {
                         Log.v("Disabling expired alarm set for " +
                               Log.formatTime(alarm.time));
-                        enableAlarmInternal(context, alarm, false);
+                        expired.add(alarm);
                     }
                 } while (cur.moveToNext());
             }
         } finally {
             cur.close();
         }
+        disableAlarmsInternal(context, expired);
+    }
+
+    /**
+     * Disables all the given alarms with a single update, and clears their
+     * snoozes with a single delete, so the provider writes each in one
+     * transaction and sends one change notification.
+     */
+    private static void disableAlarmsInternal(final Context context,
+            final List<Alarm> alarms) {
+        if (alarms.isEmpty()) {
+            return;
+        }
+        final StringBuilder ids = new StringBuilder(" IN (");
+        for (int i = 0; i < alarms.size(); i++) {
+            if (i > 0) ids.append(',');
+            ids.append(alarms.get(i).id);
+        }
+        ids.append(')');
+
+        // Clear the snoozes whose id matches.
+        clearSnoozes(context, Alarm.SnoozeColumns._ID + ids);
+        ContentValues values = new ContentValues(1);
+        values.put(Alarm.Columns.ENABLED, 0);
+        context.getContentResolver().update(Alarm.Columns.CONTENT_URI, values,
+                Alarm.Columns._ID + ids, null);
     }
 
     /**
@@ -435,18 +435,21 @@ public class Alarms {
         // does not know about the Alarm class, it throws a
         // ClassNotFoundException.
         //
-        // To avoid this, we marshall the data ourselves and then parcel a plain
-        // byte[] array. The AlarmReceiver class knows to build the Alarm
-        // object from the byte[] array.
-        Parcel out = Parcel.obtain();
-        alarm.writeToParcel(out, 0);
-        out.setDataPosition(0);
-        intent.putExtra(ALARM_RAW_DATA, out.marshall());
+        // To avoid this, we encode the data ourselves in a compact byte[]
+        // array. The AlarmReceiver class knows to build the Alarm object from
+        // the byte[] array.
+        intent.putExtra(ALARM_ENCODED_DATA, alarm.toByteArray());
 
         PendingIntent sender = PendingIntent.getBroadcast(
                 context, 0, intent, PendingIntent.FLAG_CANCEL_CURRENT);
 
         am.set(AlarmManager.RTC_WAKEUP, atTimeInMillis, sender);
+        if (alarm.silent) {
+            AlertPlayers.cancelPrepare(context, AlertPlayers.SLOT_ALARM);
+        } else {
+            AlertPlayers.schedulePrepare(context, AlertPlayers.SLOT_ALARM,
+                    getAlertSource(alarm), AlarmManager.RTC_WAKEUP, atTimeInMillis);
+        }
 
         setStatusBarIcon(context, true);
 
@@ -456,6 +459,16 @@ public class Alarms {
         saveNextAlarm(context, timeString);
     }
 
+    /**
+     * Returns the source AlertPlayers prepares for the alarm's alert, which
+     * is the default alarm alert if the alarm has none.
+     */
+    static String getAlertSource(Alarm alarm) {
+        final Uri alert = alarm.alert != null
+                ? alarm.alert : RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+        return alert.toString();
+    }
+
     /**
      * Disables alert in AlarmManager and StatusBar.
      *
@@ -468,123 +481,119 @@ public class Alarms {
                 context, 0, new Intent(ALARM_ALERT_ACTION),
                 PendingIntent.FLAG_CANCEL_CURRENT);
         am.cancel(sender);
+        AlertPlayers.cancelPrepare(context, AlertPlayers.SLOT_ALARM);
         setStatusBarIcon(context, false);
         saveNextAlarm(context, "");
     }
 
     static void saveSnoozeAlert(final Context context, final int id,
             final long time) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFERENCES, 0);
         if (id == INVALID_ALARM_ID) {
-            clearAllSnoozePreferences(context, prefs);
+            clearSnoozes(context, null);
         } else {
-            final Set<String> snoozedIds =
-                    prefs.getStringSet(PREF_SNOOZE_IDS, new HashSet<String>());
-            snoozedIds.add(Integer.toString(id));
-            final SharedPreferences.Editor ed = prefs.edit();
-            ed.putStringSet(PREF_SNOOZE_IDS, snoozedIds);
-            ed.putLong(getAlarmPrefSnoozeTimeKey(id), time);
-            ed.apply();
+            ContentValues values = new ContentValues(2);
+            values.put(Alarm.SnoozeColumns._ID, id);
+            values.put(Alarm.SnoozeColumns.SNOOZE_TIME, time);
+            context.getContentResolver().insert(Alarm.SnoozeColumns.CONTENT_URI, values);
         }
         // Set the next alert after updating the snooze.
         setNextAlert(context);
     }
 
-    private static String getAlarmPrefSnoozeTimeKey(int id) {
-        return getAlarmPrefSnoozeTimeKey(Integer.toString(id));
-    }
-
-    private static String getAlarmPrefSnoozeTimeKey(String id) {
-        return PREF_SNOOZE_TIME + id;
-    }
-
     /**
      * Disable the snooze alert if the given id matches the snooze id.
      */
     static void disableSnoozeAlert(final Context context, final int id) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFERENCES, 0);
-        if (hasAlarmBeenSnoozed(prefs, id)) {
-            // This is the same id so clear the shared prefs.
-            clearSnoozePreference(context, prefs, id);
-        }
-    }
-
-    // Helper to remove the snooze preference. Do not use clear because that
-    // will erase the clock preferences. Also clear the snooze notification in
-    // the window shade.
-    private static void clearSnoozePreference(final Context context,
-            final SharedPreferences prefs, final int id) {
-        final String alarmStr = Integer.toString(id);
-        final Set<String> snoozedIds =
-                prefs.getStringSet(PREF_SNOOZE_IDS, new HashSet<String>());
-        if (snoozedIds.contains(alarmStr)) {
+        final int count = context.getContentResolver().delete(
+                ContentUris.withAppendedId(Alarm.SnoozeColumns.CONTENT_URI, id), null, null);
+        if (count > 0) {
+            // Also clear the snooze notification in the window shade.
             NotificationManager nm = (NotificationManager)
                     context.getSystemService(Context.NOTIFICATION_SERVICE);
             nm.cancel(id);
         }
+    }
 
-        final SharedPreferences.Editor ed = prefs.edit();
-        snoozedIds.remove(alarmStr);
-        ed.putStringSet(PREF_SNOOZE_IDS, snoozedIds);
-        ed.remove(getAlarmPrefSnoozeTimeKey(alarmStr));
-        ed.apply();
-    }
-
-    private static void clearAllSnoozePreferences(final Context context,
-            final SharedPreferences prefs) {
-        NotificationManager nm = (NotificationManager)
-                context.getSystemService(Context.NOTIFICATION_SERVICE);
-        final Set<String> snoozedIds =
-                prefs.getStringSet(PREF_SNOOZE_IDS, new HashSet<String>());
-        final SharedPreferences.Editor ed = prefs.edit();
-        for (String snoozeId : snoozedIds) {
-            nm.cancel(Integer.parseInt(snoozeId));
-            ed.remove(getAlarmPrefSnoozeTimeKey(snoozeId));
+    // Helper to remove the snoozes matching the given selection, or all of
+    // them if it is null. Also clear their notifications in the window shade.
+    private static void clearSnoozes(final Context context, final String where) {
+        final ContentResolver resolver = context.getContentResolver();
+        final Cursor cursor = resolver.query(Alarm.SnoozeColumns.CONTENT_URI,
+                Alarm.SnoozeColumns.SNOOZE_QUERY_COLUMNS, where, null, null);
+        if (cursor == null) {
+            return;
         }
+        try {
+            if (cursor.getCount() == 0) {
+                return;
+            }
+            NotificationManager nm = (NotificationManager)
+                    context.getSystemService(Context.NOTIFICATION_SERVICE);
+            while (cursor.moveToNext()) {
+                nm.cancel(cursor.getInt(Alarm.SnoozeColumns.SNOOZE_ID_INDEX));
+            }
+        } finally {
+            cursor.close();
+        }
+        resolver.delete(Alarm.SnoozeColumns.CONTENT_URI, where, null);
+    }
 
-        ed.remove(PREF_SNOOZE_IDS);
-        ed.apply();
+    /**
+     * Tells the StatusBar whether the alarm is enabled or disabled
+     */
+    private static void setStatusBarIcon(Context context, boolean enabled) {
+        Intent alarmChanged = new Intent("android.intent.action.ALARM_CHANGED");
+        alarmChanged.putExtra("alarmSet", enabled);
+        context.sendBroadcast(alarmChanged);
     }
 
-    private static boolean hasAlarmBeenSnoozed(final SharedPreferences prefs, final int alarmId) {
-        final Set<String> snoozedIds = prefs.getStringSet(PREF_SNOOZE_IDS, null);
+    private static final long MINUTE_MILLIS = 60 * 1000;
+    private static final long DAY_MILLIS = 24 * 60 * MINUTE_MILLIS;
 
-        // Return true if there a valid snoozed alarmId was saved
-        return snoozedIds != null && snoozedIds.contains(Integer.toString(alarmId));
-    }
+    // Bumped whenever the wall clock or the timezone changes, invalidating
+    // every cached alarm time.
+    private static final AtomicInteger sClockGeneration = new AtomicInteger();
+    private static TimeZone sTimeZone;
 
     /**
-     * Updates the specified Alarm with the additional snooze time.
-     * Returns a boolean indicating whether the alarm was updated.
+     * Called when the wall clock or the timezone changed. Drops all cached
+     * next alarm times.
      */
-    private static boolean updateAlarmTimeForSnooze(
-            final SharedPreferences prefs, final Alarm alarm) {
-        if (!hasAlarmBeenSnoozed(prefs, alarm.id)) {
-            // No need to modify the alarm
-            return false;
+    static void onClockChanged() {
+        synchronized (Alarms.class) {
+            sTimeZone = null;
         }
+        sClockGeneration.incrementAndGet();
+        AlarmIndex.getInstance().invalidate();
+    }
 
-        final long time = prefs.getLong(getAlarmPrefSnoozeTimeKey(alarm.id), -1);
-        // The time in the database is either 0 (repeating) or a specific time
-        // for a non-repeating alarm. Update this value so the AlarmReceiver
-        // has the right time to compare.
-        alarm.time = time;
-
-        return true;
+    private static synchronized TimeZone getTimeZone() {
+        // TimeZone.getDefault() returns a new clone on every call.
+        if (sTimeZone == null) {
+            sTimeZone = TimeZone.getDefault();
+        }
+        return sTimeZone;
     }
 
     /**
-     * Tells the StatusBar whether the alarm is enabled or disabled
+     * Returns the next time the given alarm fires. The result is cached in
+     * the alarm until it passes or the clock changes.
      */
-    private static void setStatusBarIcon(Context context, boolean enabled) {
-        Intent alarmChanged = new Intent("android.intent.action.ALARM_CHANGED");
-        alarmChanged.putExtra("alarmSet", enabled);
-        context.sendBroadcast(alarmChanged);
-    }
-
-    private static long calculateAlarm(Alarm alarm) {
-        return calculateAlarm(alarm.hour, alarm.minutes, alarm.daysOfWeek)
-                .getTimeInMillis();
+    static long calculateAlarm(Alarm alarm) {
+        final long now = System.currentTimeMillis();
+        final int generation = sClockGeneration.get();
+        final int key = (alarm.daysOfWeek.getCoded() << 11)
+                | (alarm.hour * 60 + alarm.minutes);
+        if (alarm.cachedAlertGeneration == generation && alarm.cachedAlertKey == key
+                && alarm.cachedAlertTime > now) {
+            return alarm.cachedAlertTime;
+        }
+        final long time = calculateAlarm(alarm.hour, alarm.minutes,
+                alarm.daysOfWeek.getCoded(), now);
+        alarm.cachedAlertTime = time;
+        alarm.cachedAlertKey = key;
+        alarm.cachedAlertGeneration = generation;
+        return time;
     }
 
     /**
@@ -593,27 +602,41 @@ public class Alarms {
      */
     static Calendar calculateAlarm(int hour, int minute,
             Alarm.DaysOfWeek daysOfWeek) {
-
-        // start with now
         Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(System.currentTimeMillis());
+        c.setTimeInMillis(calculateAlarm(hour, minute, daysOfWeek.getCoded(),
+                System.currentTimeMillis()));
+        return c;
+    }
 
-        int nowHour = c.get(Calendar.HOUR_OF_DAY);
-        int nowMinute = c.get(Calendar.MINUTE);
+    /**
+     * Returns the first time strictly after now at the given local hour and
+     * minute, on one of the given days of week if any is set. Works on local
+     * epoch days instead of a Calendar so it does not allocate.
+     */
+    static long calculateAlarm(int hour, int minute, int daysOfWeek, long now) {
+        final TimeZone tz = getTimeZone();
+        final long localNow = now + tz.getOffset(now);
+        long localDay = localNow / DAY_MILLIS;
+        if (localNow < 0 && localNow % DAY_MILLIS != 0) {
+            localDay--;
+        }
+        final int nowMinute = (int) ((localNow - localDay * DAY_MILLIS) / MINUTE_MILLIS);
+        final int alarmMinute = hour * 60 + minute;
 
         // if alarm is behind current time, advance one day
-        if (hour < nowHour  ||
-            hour == nowHour && minute <= nowMinute) {
-            c.add(Calendar.DAY_OF_YEAR, 1);
+        if (alarmMinute <= nowMinute) {
+            localDay++;
         }
-        c.set(Calendar.HOUR_OF_DAY, hour);
-        c.set(Calendar.MINUTE, minute);
-        c.set(Calendar.SECOND, 0);
-        c.set(Calendar.MILLISECOND, 0);
 
-        int addDays = daysOfWeek.getNextAlarm(c);
-        if (addDays > 0) c.add(Calendar.DAY_OF_WEEK, addDays);
-        return c;
+        // Epoch day 0 is a Thursday, which is bit index 3.
+        int today = (int) ((localDay + 3) % 7);
+        if (today < 0) {
+            today += 7;
+        }
+        localDay += Alarm.DaysOfWeek.getDaysUntilSet(daysOfWeek, today);
+
+        final long local = localDay * DAY_MILLIS + alarmMinute * MINUTE_MILLIS;
+        return local - tz.getOffset(local - tz.getOffset(local));
     }
 
     static String formatTime(final Context context, int hour, int minute,
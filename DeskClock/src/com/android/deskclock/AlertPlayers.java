@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioManager;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Media players prepared ahead of the next alarm and the next timer.
+ *
+ * Shortly before an alert is due, AlarmReceiver is woken up to create and
+ * prepare a looping player for its sound, so AlarmKlaxon and TimerRingService
+ * only have to start it. Players are prepared on a thread of their own, so a
+ * slow data source never holds up the AsyncHandler thread that handles the
+ * alarms. There is one player per slot; a player that doesn't
+ * match the sound wanted when the alert fires is ignored and the services
+ * prepare one the usual way. A player that isn't taken shortly after its
+ * alert was due, or after its alert was cancelled, is released. The delay
+ * between the alert firing and the sound starting is recorded either way, and
+ * can be read with getLatencyCount(), getAverageLatency() and getMaxLatency().
+ */
+public final class AlertPlayers {
+
+    public static final int SLOT_ALARM = 0;
+    public static final int SLOT_TIMER = 1;
+    private static final int SLOT_COUNT = 2;
+
+    // Source of the sound played when a timer is up.
+    public static final String TIMER_SOURCE = "asset:sounds/Timer_Expire.ogg";
+    private static final String ASSET_PREFIX = "asset:";
+
+    static final String PREPARE_ALERT_ACTION = "com.android.deskclock.PREPARE_ALERT";
+    static final String EXTRA_SLOT = "slot";
+    static final String EXTRA_SOURCE = "source";
+    // SystemClock.elapsedRealtime() when the alert was received.
+    public static final String EXTRA_FIRED_AT = "firedAt";
+
+    // How long before the alert to prepare its player.
+    private static final long PREPARE_LEAD_MS = 60 * 1000;
+    // How long a player is kept past the time its alert was due, or after its
+    // alert was cancelled, in case that alert is firing right now.
+    private static final long EXPIRY_GRACE_MS = 30 * 1000;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    private static final HandlerThread sPrepareThread = new HandlerThread("AlertPlayers");
+    private static final Handler sPrepareHandler;
+
+    static {
+        sPrepareThread.start();
+        sPrepareHandler = new Handler(sPrepareThread.getLooper());
+    }
+
+    private static final MediaPlayer[] sPlayers = new MediaPlayer[SLOT_COUNT];
+    private static final String[] sSources = new String[SLOT_COUNT];
+
+    // Alert to sound latencies, for prepared and cold starts.
+    private static final int[] sCounts = new int[2];
+    private static final long[] sTotals = new long[2];
+    private static final long[] sMaxima = new long[2];
+
+    private AlertPlayers() {}
+
+    /**
+     * Arranges for the player of slot to be prepared with the sound of source
+     * shortly before fireTime, which uses the given AlarmManager clock.
+     */
+    public static void schedulePrepare(Context context, final int slot, final String source,
+            int clockType, long fireTime) {
+        final boolean elapsed = clockType == AlarmManager.ELAPSED_REALTIME
+                || clockType == AlarmManager.ELAPSED_REALTIME_WAKEUP;
+        final long now = elapsed ? SystemClock.elapsedRealtime() : System.currentTimeMillis();
+        final PendingIntent sender = getPrepareIntent(context, slot, source);
+        final AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (fireTime - PREPARE_LEAD_MS > now) {
+            am.set(clockType, fireTime - PREPARE_LEAD_MS, sender);
+        } else {
+            am.cancel(sender);
+            prepareLater(context, slot, source, null);
+        }
+    }
+
+    /**
+     * Cancels preparing the player of slot. A player already prepared is
+     * kept for a little while, since its alert may be firing right now.
+     */
+    public static void cancelPrepare(Context context, int slot) {
+        final AlarmManager am = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        am.cancel(getPrepareIntent(context, slot, null));
+        final MediaPlayer player;
+        synchronized (AlertPlayers.class) {
+            player = sPlayers[slot];
+        }
+        if (player != null) {
+            expireLater(slot, player, EXPIRY_GRACE_MS);
+        }
+    }
+
+    private static PendingIntent getPrepareIntent(Context context, int slot, String source) {
+        final Intent intent = new Intent(PREPARE_ALERT_ACTION);
+        intent.setClass(context, AlarmReceiver.class);
+        intent.putExtra(EXTRA_SLOT, slot);
+        intent.putExtra(EXTRA_SOURCE, source);
+        return PendingIntent.getBroadcast(context, slot, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+
+    /**
+     * Prepares the player of slot with the sound of source, replacing any
+     * other, on the thread of the players. Runs done, if not null, on that
+     * thread once it is done.
+     */
+    static void prepareLater(Context context, final int slot, final String source,
+            final Runnable done) {
+        final Context appContext = context.getApplicationContext();
+        sPrepareHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prepare(appContext, slot, source);
+                } finally {
+                    if (done != null) {
+                        done.run();
+                    }
+                }
+            }
+        });
+    }
+
+    // Blocks, so must only be called on the thread of the players.
+    private static void prepare(Context context, int slot, String source) {
+        if (source == null) {
+            return;
+        }
+        synchronized (AlertPlayers.class) {
+            if (sPlayers[slot] != null && source.equals(sSources[slot])) {
+                expireLater(slot, sPlayers[slot], PREPARE_LEAD_MS + EXPIRY_GRACE_MS);
+                return;
+            }
+        }
+        // Prepared without the lock, which takePrepared() needs on the main
+        // thread of the alert services.
+        final MediaPlayer player = new MediaPlayer();
+        try {
+            setDataSource(context, player, source);
+            player.setAudioStreamType(AudioManager.STREAM_ALARM);
+            player.setLooping(true);
+            player.prepare();
+        } catch (Exception e) {
+            // The alert services will try again, and fall back, when it fires.
+            Log.w("Could not prepare alert player for " + source + ": " + e);
+            player.release();
+            return;
+        }
+        final MediaPlayer old;
+        synchronized (AlertPlayers.class) {
+            old = sPlayers[slot];
+            sPlayers[slot] = player;
+            sSources[slot] = source;
+        }
+        if (old != null) {
+            old.release();
+        }
+        expireLater(slot, player, PREPARE_LEAD_MS + EXPIRY_GRACE_MS);
+        if (Log.LOGV) Log.v("Prepared alert player " + slot + " for " + source);
+    }
+
+    /**
+     * Returns the prepared player of slot if it plays source, handing it over
+     * to the caller, or null. A player for another source is released, since
+     * the alert it was prepared for changed.
+     */
+    public static MediaPlayer takePrepared(int slot, String source) {
+        final MediaPlayer player;
+        synchronized (AlertPlayers.class) {
+            player = sPlayers[slot];
+            if (player == null) {
+                return null;
+            }
+            sPlayers[slot] = null;
+            final boolean matches = sSources[slot].equals(source);
+            sSources[slot] = null;
+            if (matches) {
+                return player;
+            }
+        }
+        player.release();
+        return null;
+    }
+
+    // Releases player after delay, unless it was taken or replaced by then.
+    // The delay doesn't count deep sleep, so it may only run late, never early.
+    private static void expireLater(final int slot, final MediaPlayer player, long delay) {
+        sHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (AlertPlayers.class) {
+                    if (sPlayers[slot] != player) {
+                        return;
+                    }
+                    sPlayers[slot] = null;
+                    sSources[slot] = null;
+                }
+                if (Log.LOGV) Log.v("Releasing unused alert player " + slot);
+                player.release();
+            }
+        }, delay);
+    }
+
+    /**
+     * Sets the data source of player to source, either an asset or a uri.
+     */
+    public static void setDataSource(Context context, MediaPlayer player, String source)
+            throws java.io.IOException {
+        if (source.startsWith(ASSET_PREFIX)) {
+            final AssetFileDescriptor afd =
+                    context.getAssets().openFd(source.substring(ASSET_PREFIX.length()));
+            try {
+                player.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(),
+                        afd.getLength());
+            } finally {
+                afd.close();
+            }
+        } else {
+            player.setDataSource(context, Uri.parse(source));
+        }
+    }
+
+    /**
+     * Records the time from the alert firing, as given by the EXTRA_FIRED_AT
+     * extra of intent, to its sound starting now.
+     */
+    public static void recordLatency(Intent intent, boolean prepared) {
+        final long firedAt = intent.getLongExtra(EXTRA_FIRED_AT, -1);
+        if (firedAt < 0) {
+            return;
+        }
+        final long latency = SystemClock.elapsedRealtime() - firedAt;
+        final int i = prepared ? 1 : 0;
+        synchronized (AlertPlayers.class) {
+            sCounts[i]++;
+            sTotals[i] += latency;
+            sMaxima[i] = Math.max(sMaxima[i], latency);
+            if (Log.LOGV) {
+                Log.v("Alert sound started " + latency + "ms after the alert"
+                        + (prepared ? " (prepared)" : " (cold)") + ", average "
+                        + sTotals[i] / sCounts[i] + "ms, max " + sMaxima[i] + "ms over "
+                        + sCounts[i] + " alerts");
+            }
+        }
+    }
+
+    /**
+     * Returns the number of alert sounds started with a prepared player, or
+     * without one, since the process started.
+     */
+    public static synchronized int getLatencyCount(boolean prepared) {
+        return sCounts[prepared ? 1 : 0];
+    }
+
+    /**
+     * Returns the average time in ms from an alert firing to its sound
+     * starting with a prepared player, or without one, or -1 if there was no
+     * such alert yet.
+     */
+    public static synchronized long getAverageLatency(boolean prepared) {
+        final int i = prepared ? 1 : 0;
+        return sCounts[i] > 0 ? sTotals[i] / sCounts[i] : -1;
+    }
+
+    /**
+     * Returns the longest time in ms from an alert firing to its sound
+     * starting with a prepared player, or without one, or -1 if there was no
+     * such alert yet.
+     */
+    public static synchronized long getMaxLatency(boolean prepared) {
+        final int i = prepared ? 1 : 0;
+        return sCounts[i] > 0 ? sMaxima[i] : -1;
+    }
+}
@@ -16,19 +16,13 @@
 
 package com.android.deskclock;
 
-import java.util.TimeZone;
-
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.drawable.Drawable;
-import android.os.Handler;
 import android.text.format.DateUtils;
 import android.text.format.Time;
 import android.util.AttributeSet;
@@ -51,7 +45,6 @@ public class AnalogClock extends View {
 
     private boolean mAttached;
 
-    private final Handler mHandler = new Handler();
     private float mSeconds;
     private float mMinutes;
     private float mHour;
@@ -104,35 +97,22 @@ public class AnalogClock extends View {
 
         if (!mAttached) {
             mAttached = true;
-            IntentFilter filter = new IntentFilter();
-
-            filter.addAction(Intent.ACTION_TIME_TICK);
-            filter.addAction(Intent.ACTION_TIME_CHANGED);
-            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
-
-            getContext().registerReceiver(mIntentReceiver, filter, null, mHandler);
+            // Ticks every second unless the second hand is hidden.
+            ClockTickBus.getInstance(mContext).addListener(mTickListener, !mNoSeconds);
         }
 
-        // NOTE: It's safe to do these after registering the receiver since the receiver always runs
-        // in the main thread, therefore the receiver can't run before this method returns.
-
-        // The time zone may have changed while the receiver wasn't registered, so update the Time
+        // The time zone may have changed while the listener wasn't registered, so update the Time
         mCalendar = new Time();
 
         // Make sure we update to the current time
-        onTimeChanged();
-
-        // tick the seconds
-        post(mClockTick);
-
+        onTimeChanged(System.currentTimeMillis());
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
         if (mAttached) {
-            getContext().unregisterReceiver(mIntentReceiver);
-            removeCallbacks(mClockTick);
+            ClockTickBus.getInstance(mContext).removeListener(mTickListener);
             mAttached = false;
         }
     }
@@ -247,12 +227,11 @@ public class AnalogClock extends View {
         }
     }
 
-    private void onTimeChanged() {
-        mCalendar.setToNow();
-
-        if (mTimeZoneId != null) {
+    private void onTimeChanged(long now) {
+        if (mTimeZoneId != null && !mTimeZoneId.equals(mCalendar.timezone)) {
             mCalendar.switchTimezone(mTimeZoneId);
         }
+        mCalendar.set(now);
 
         int hour = mCalendar.hour;
         int minute = mCalendar.minute;
@@ -267,25 +246,20 @@ public class AnalogClock extends View {
         updateContentDescription(mCalendar);
     }
 
-    private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
+    private final ClockTickBus.Listener mTickListener = new ClockTickBus.Listener() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            if (intent.getAction().equals(Intent.ACTION_TIMEZONE_CHANGED)) {
-                String tz = intent.getStringExtra("time-zone");
-                mCalendar = new Time(TimeZone.getTimeZone(tz).getID());
-            }
-            onTimeChanged();
+        public void onClockTick(long now) {
+            onTimeChanged(now);
             invalidate();
         }
-    };
 
-    private final Runnable mClockTick = new Runnable () {
+        @Override
+        public void onTimeZoneChanged() {
+            mCalendar = new Time();
+        }
 
         @Override
-        public void run() {
-            onTimeChanged();
-            invalidate();
-            AnalogClock.this.postDelayed(mClockTick, 1000);
+        public void onTimeFormatChanged() {
         }
     };
 
@@ -298,11 +272,14 @@ public class AnalogClock extends View {
 
     public void setTimeZone(String id) {
         mTimeZoneId = id;
-        onTimeChanged();
+        onTimeChanged(System.currentTimeMillis());
     }
 
     public void enableSeconds(boolean enable) {
         mNoSeconds = !enable;
+        if (mAttached) {
+            ClockTickBus.getInstance(mContext).addListener(mTickListener, enable);
+        }
     }
 
 }
@@ -6,6 +6,7 @@ import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.view.View;
@@ -45,6 +46,34 @@ public class CircleTimerView extends View {
     //                   animation until stopped.
     private boolean mTimerMode = false; // default is stop watch view
 
+    // A frame at 60 fps, in milliseconds.
+    private static final long FRAME_MS = 16;
+    // Upper bounds in milliseconds of the draw time histogram buckets. The last bucket holds
+    // all longer draws.
+    private static final long[] DRAW_TIME_BUCKETS_MS = { 1, 2, 4, 8, 16 };
+
+    // Geometry of the last draw.
+    private int mXCenter;
+    private int mYCenter;
+    private float mRadius;
+    // While animating, the part of the circle invalidated for the next frame, as red arc
+    // fractions. Only valid if mPartialInvalidate is set.
+    private boolean mPartialInvalidate;
+    private float mDirtyTo;
+    private final Rect mDirtyRect = new Rect();
+    private final Rect mClipRect = new Rect();
+    private final Runnable mNextFrame = new Runnable() {
+        @Override
+        public void run() {
+            invalidate(mDirtyRect);
+        }
+    };
+
+    // Frame statistics, see getFrameCount().
+    private long mFrameCount;
+    private long mSkippedFrameCount;
+    private final long[] mDrawTimeHistogram = new long[DRAW_TIME_BUCKETS_MS.length + 1];
+
     public CircleTimerView(Context context) {
         this(context, null);
     }
@@ -140,6 +169,7 @@ public class CircleTimerView extends View {
 
     @Override
     public void onDraw(Canvas canvas) {
+        final long drawStart = System.nanoTime();
         int xCenter = getWidth() / 2 + 1;
         int yCenter = getHeight() / 2;
 
@@ -169,9 +199,8 @@ public class CircleTimerView extends View {
             mArcRect.bottom = yCenter + radius;
             mArcRect.left =  xCenter - radius;
             mArcRect.right = xCenter + radius;
-            float redPercent = (float)mCurrentIntervalTime / (float)mIntervalTime;
             // prevent timer from doing more than one full circle
-            redPercent = (redPercent > 1 && mTimerMode) ? 1 : redPercent;
+            float redPercent = getRedPercent();
 
             float whitePercent = 1 - (redPercent > 1 ? 1 : redPercent);
             // draw red arc here
@@ -204,11 +233,165 @@ public class CircleTimerView extends View {
             }
             drawRedDiamond(canvas, redPercent, xCenter, yCenter, radius);
         }
+        mXCenter = xCenter;
+        mYCenter = yCenter;
+        mRadius = radius;
         if (mAnimate) {
-            invalidate();
+            scheduleNextFrame(canvas);
+        } else {
+            mPartialInvalidate = false;
         }
+        recordFrame(System.nanoTime() - drawStart);
    }
 
+    // Returns how far around the circle the red arc goes, as drawn by onDraw().
+    private float getRedPercent() {
+        float redPercent = (float)mCurrentIntervalTime / (float)mIntervalTime;
+        return (redPercent > 1 && mTimerMode) ? 1 : redPercent;
+    }
+
+    // Invalidates only the part of the circle the red arc and diamond will have moved over by
+    // the time of the next frame. Frames in which they would move by less than a pixel are
+    // skipped by waiting until they have moved by one.
+    private void scheduleNextFrame(Canvas canvas) {
+        if (mIntervalTime <= 0 || mRadius <= 0) {
+            mPartialInvalidate = false;
+            invalidate();
+            return;
+        }
+        final float redPercent = getRedPercent();
+        if (mTimerMode && redPercent >= 1) {
+            // The circle is complete and won't change any more.
+            mPartialInvalidate = false;
+            return;
+        }
+        // Whatever lies past the last dirty region wasn't painted if the canvas was clipped.
+        float paintedTo = redPercent;
+        canvas.getClipBounds(mClipRect);
+        if (mPartialInvalidate && (mClipRect.width() < getWidth()
+                || mClipRect.height() < getHeight())) {
+            paintedTo = Math.min(paintedTo, mDirtyTo);
+        }
+
+        final double circumference = 2 * Math.PI * mRadius;
+        final long msPerPixel = (long) Math.ceil(mIntervalTime / circumference);
+        final long delay = Math.max(FRAME_MS, msPerPixel);
+        float dirtyTo = (float) (mCurrentIntervalTime + 2 * delay) / (float) mIntervalTime;
+        if (mTimerMode) {
+            dirtyTo = Math.min(dirtyTo, 1);
+        }
+        getArcBounds(paintedTo, dirtyTo, mDirtyRect);
+        mPartialInvalidate = true;
+        mDirtyTo = dirtyTo;
+        // Only one frame is ever pending, however often the view is drawn.
+        removeCallbacks(mNextFrame);
+        if (delay > FRAME_MS) {
+            mSkippedFrameCount += delay / FRAME_MS - 1;
+            postDelayed(mNextFrame, delay);
+        } else {
+            postOnAnimation(mNextFrame);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(mNextFrame);
+    }
+
+    // Sets bounds to the part of the view covering the circle between the given red arc
+    // fractions, including the diamond at either end.
+    private void getArcBounds(float from, float to, Rect bounds) {
+        final float direction = mTimerMode ? -360 : 360;
+        final float fromAngle = 270 + from * direction;
+        final float sweep = (to - from) * direction;
+        float left;
+        float top;
+        float right;
+        float bottom;
+        if (Math.abs(sweep) >= 360) {
+            left = mXCenter - mRadius;
+            top = mYCenter - mRadius;
+            right = mXCenter + mRadius;
+            bottom = mYCenter + mRadius;
+        } else {
+            final double fromRadians = Math.toRadians(fromAngle);
+            final double toRadians = Math.toRadians(fromAngle + sweep);
+            final float x1 = mXCenter + (float) (mRadius * Math.cos(fromRadians));
+            final float y1 = mYCenter + (float) (mRadius * Math.sin(fromRadians));
+            final float x2 = mXCenter + (float) (mRadius * Math.cos(toRadians));
+            final float y2 = mYCenter + (float) (mRadius * Math.sin(toRadians));
+            left = Math.min(x1, x2);
+            top = Math.min(y1, y2);
+            right = Math.max(x1, x2);
+            bottom = Math.max(y1, y2);
+            // Extend to the extreme points of the circle the arc passes through.
+            final float start = sweep >= 0 ? fromAngle : fromAngle + sweep;
+            final float end = start + Math.abs(sweep);
+            for (int angle = (int) Math.ceil(start / 90) * 90; angle <= end; angle += 90) {
+                switch (((angle / 90) % 4 + 4) % 4) {
+                    case 0:
+                        right = mXCenter + mRadius;
+                        break;
+                    case 1:
+                        bottom = mYCenter + mRadius;
+                        break;
+                    case 2:
+                        left = mXCenter - mRadius;
+                        break;
+                    default:
+                        top = mYCenter - mRadius;
+                        break;
+                }
+            }
+        }
+        // The diamond is a rotated square, and the arcs are stroked.
+        final float inset = Math.max(mRectHalfWidth * 1.5f, mStrokeSize) + 1;
+        bounds.set((int) Math.floor(left - inset), (int) Math.floor(top - inset),
+                (int) Math.ceil(right + inset), (int) Math.ceil(bottom + inset));
+    }
+
+    private void recordFrame(long drawNanos) {
+        mFrameCount++;
+        final long drawMs = drawNanos / 1000000;
+        int bucket = 0;
+        while (bucket < DRAW_TIME_BUCKETS_MS.length && drawMs >= DRAW_TIME_BUCKETS_MS[bucket]) {
+            bucket++;
+        }
+        mDrawTimeHistogram[bucket]++;
+    }
+
+    /**
+     * Returns the number of times the view was drawn.
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Returns the number of frames not drawn while animating because the arc would have moved
+     * by less than a pixel.
+     */
+    public long getSkippedFrameCount() {
+        return mSkippedFrameCount;
+    }
+
+    /**
+     * Returns the number of draws that took less than 1, 2, 4, 8 and 16 ms, and longer, in
+     * that order. Each draw is only counted in the first bucket it fits.
+     */
+    public long[] getDrawTimeHistogram() {
+        return mDrawTimeHistogram.clone();
+    }
+
+    public void resetFrameStats() {
+        mFrameCount = 0;
+        mSkippedFrameCount = 0;
+        for (int i = 0; i < mDrawTimeHistogram.length; i++) {
+            mDrawTimeHistogram[i] = 0;
+        }
+    }
+
     protected void drawRedDiamond(
             Canvas canvas, float degrees, int xCenter, int yCenter, float radius) {
         mPaint.setColor(mRedColor);
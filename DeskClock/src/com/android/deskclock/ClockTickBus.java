@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock;
+
+import java.util.ArrayList;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+
+/**
+ * Process-wide source of clock ticks for the clock views.
+ *
+ * A single receiver for the time tick, time and time zone broadcasts, a
+ * single observer of the 12/24 hour setting and a single seconds tick are
+ * shared by every attached clock. The time is read once per tick and handed
+ * to all listeners. Seconds ticks are aligned to second boundaries and only
+ * run while some listener wants them. Must only be used from the main
+ * thread.
+ */
+final class ClockTickBus {
+
+    interface Listener {
+        /**
+         * Called with the current time on every tick the listener asked for,
+         * and after any of the changes below.
+         */
+        void onClockTick(long now);
+
+        /**
+         * Called before the next tick when the time zone changed.
+         */
+        void onTimeZoneChanged();
+
+        /**
+         * Called before the next tick when the 12/24 hour setting may have
+         * changed.
+         */
+        void onTimeFormatChanged();
+    }
+
+    private static ClockTickBus sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Listener> mListeners = new ArrayList<Listener>();
+    // Listeners that also want a tick every second.
+    private final ArrayList<Listener> mSecondsListeners = new ArrayList<Listener>();
+    // Copies of the lists above handed out for dispatch, so listeners can
+    // register and unregister from their callbacks. Null when stale.
+    private Listener[] mListenersSnapshot;
+    private Listener[] mSecondsSnapshot;
+    private boolean mRegistered;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final Listener[] listeners = getListeners();
+            if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                for (Listener l : listeners) {
+                    l.onTimeZoneChanged();
+                }
+            }
+            dispatchTick(listeners);
+        }
+    };
+
+    private final ContentObserver mFormatObserver = new ContentObserver(mHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            final Listener[] listeners = getListeners();
+            for (Listener l : listeners) {
+                l.onTimeFormatChanged();
+            }
+            dispatchTick(listeners);
+        }
+    };
+
+    private final Runnable mSecondsTick = new Runnable() {
+        @Override
+        public void run() {
+            dispatchTick(getSecondsListeners());
+            scheduleSecondsTick();
+        }
+    };
+
+    private ClockTickBus(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    static synchronized ClockTickBus getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ClockTickBus(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Registers the listener for minute ticks and time changes, and also for
+     * ticks on every second if seconds is set. Registering a listener again
+     * updates its seconds choice.
+     */
+    void addListener(Listener listener, boolean seconds) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+            mListenersSnapshot = null;
+        }
+        final boolean hadSeconds = !mSecondsListeners.isEmpty();
+        if (seconds && !mSecondsListeners.contains(listener)) {
+            mSecondsListeners.add(listener);
+            mSecondsSnapshot = null;
+        } else if (!seconds && mSecondsListeners.remove(listener)) {
+            mSecondsSnapshot = null;
+        }
+        if (!mRegistered) {
+            registerReceivers();
+        }
+        if (!hadSeconds && !mSecondsListeners.isEmpty()) {
+            scheduleSecondsTick();
+        } else if (mSecondsListeners.isEmpty()) {
+            mHandler.removeCallbacks(mSecondsTick);
+        }
+    }
+
+    void removeListener(Listener listener) {
+        if (mSecondsListeners.remove(listener)) {
+            mSecondsSnapshot = null;
+            if (mSecondsListeners.isEmpty()) {
+                mHandler.removeCallbacks(mSecondsTick);
+            }
+        }
+        if (mListeners.remove(listener)) {
+            mListenersSnapshot = null;
+            if (mListeners.isEmpty() && mRegistered) {
+                unregisterReceivers();
+            }
+        }
+    }
+
+    private void registerReceivers() {
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIME_TICK);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        mContext.registerReceiver(mReceiver, filter, null, mHandler);
+        mContext.getContentResolver().registerContentObserver(
+                Settings.System.CONTENT_URI, true, mFormatObserver);
+        mRegistered = true;
+    }
+
+    private void unregisterReceivers() {
+        mContext.unregisterReceiver(mReceiver);
+        mContext.getContentResolver().unregisterContentObserver(mFormatObserver);
+        mRegistered = false;
+    }
+
+    private void scheduleSecondsTick() {
+        mHandler.removeCallbacks(mSecondsTick);
+        if (!mSecondsListeners.isEmpty()) {
+            mHandler.postDelayed(mSecondsTick, 1000 - System.currentTimeMillis() % 1000);
+        }
+    }
+
+    private static void dispatchTick(Listener[] listeners) {
+        final long now = System.currentTimeMillis();
+        for (Listener l : listeners) {
+            l.onClockTick(now);
+        }
+    }
+
+    private Listener[] getListeners() {
+        if (mListenersSnapshot == null) {
+            mListenersSnapshot = mListeners.toArray(new Listener[mListeners.size()]);
+        }
+        return mListenersSnapshot;
+    }
+
+    private Listener[] getSecondsListeners() {
+        if (mSecondsSnapshot == null) {
+            mSecondsSnapshot = mSecondsListeners.toArray(new Listener[mSecondsListeners.size()]);
+        }
+        return mSecondsSnapshot;
+    }
+}
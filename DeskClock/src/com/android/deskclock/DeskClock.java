@@ -149,6 +149,7 @@ public class DeskClock extends Activity implements LabelDialogFragment.TimerLabe
         }
         initViews();
         setHomeTimeZone();
+        RingtoneTitles.getInstance(this).prewarm();
     }
 
     @Override
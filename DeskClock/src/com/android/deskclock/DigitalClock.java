@@ -20,14 +20,8 @@ import java.text.DateFormatSymbols;
 import java.util.Calendar;
 import java.util.TimeZone;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.database.ContentObserver;
 import android.graphics.Typeface;
-import android.os.Handler;
-import android.provider.Settings;
 import android.text.format.DateFormat;
 import android.util.AttributeSet;
 import android.view.View;
@@ -47,30 +41,36 @@ public class DigitalClock extends LinearLayout {
     private String mHoursFormat;
     private TextView mTimeDisplayHours, mTimeDisplayMinutes;
     private AmPm mAmPm;
-    private ContentObserver mFormatChangeObserver;
     private boolean mLive = true;
     private boolean mAttached;
     private final Typeface mRobotoThin;
     private String mTimeZoneId;
 
 
-    /* called by system on minute ticks */
-    private final Handler mHandler = new Handler();
-    private final BroadcastReceiver mIntentReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                if (mLive && intent.getAction().equals(
-                            Intent.ACTION_TIMEZONE_CHANGED)) {
-                    mCalendar = Calendar.getInstance();
-                }
-                // Post a runnable to avoid blocking the broadcast.
-                mHandler.post(new Runnable() {
-                        public void run() {
-                            updateTime();
-                        }
-                });
+    /* called on minute ticks, time changes and 12/24-hour setting changes */
+    private final ClockTickBus.Listener mTickListener = new ClockTickBus.Listener() {
+        @Override
+        public void onClockTick(long now) {
+            if (mLive) {
+                updateTime(now);
+            }
+        }
+
+        @Override
+        public void onTimeZoneChanged() {
+            if (mLive) {
+                mCalendar = Calendar.getInstance();
+            }
+        }
+
+        @Override
+        public void onTimeFormatChanged() {
+            setDateFormat();
+            if (!mLive) {
+                updateTime();
             }
-        };
+        }
+    };
 
     static class AmPm {
         private final TextView mAmPm;
@@ -97,17 +97,6 @@ public class DigitalClock extends LinearLayout {
         }
     }
 
-    private class FormatChangeObserver extends ContentObserver {
-        public FormatChangeObserver() {
-            super(new Handler());
-        }
-        @Override
-        public void onChange(boolean selfChange) {
-            setDateFormat();
-            updateTime();
-        }
-    }
-
     public DigitalClock(Context context) {
         this(context, null);
     }
@@ -139,19 +128,8 @@ public class DigitalClock extends LinearLayout {
         if (mAttached) return;
         mAttached = true;
 
-        if (mLive) {
-            /* monitor time ticks, time changed, timezone */
-            IntentFilter filter = new IntentFilter();
-            filter.addAction(Intent.ACTION_TIME_TICK);
-            filter.addAction(Intent.ACTION_TIME_CHANGED);
-            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
-            getContext().registerReceiver(mIntentReceiver, filter);
-        }
-
-        /* monitor 12/24-hour display preference */
-        mFormatChangeObserver = new FormatChangeObserver();
-        getContext().getContentResolver().registerContentObserver(
-                Settings.System.CONTENT_URI, true, mFormatChangeObserver);
+        /* monitor time ticks, time changed, timezone and 12/24-hour display preference */
+        ClockTickBus.getInstance(getContext()).addListener(mTickListener, false);
 
         updateTime();
     }
@@ -163,11 +141,7 @@ public class DigitalClock extends LinearLayout {
         if (!mAttached) return;
         mAttached = false;
 
-        if (mLive) {
-            getContext().unregisterReceiver(mIntentReceiver);
-        }
-        getContext().getContentResolver().unregisterContentObserver(
-                mFormatChangeObserver);
+        ClockTickBus.getInstance(getContext()).removeListener(mTickListener);
     }
 
 
@@ -186,8 +160,12 @@ public class DigitalClock extends LinearLayout {
     }
 
     private void updateTime() {
+        updateTime(System.currentTimeMillis());
+    }
+
+    private void updateTime(long now) {
         if (mLive) {
-            mCalendar.setTimeInMillis(System.currentTimeMillis());
+            mCalendar.setTimeInMillis(now);
         }
         if (mTimeZoneId != null) {
             mCalendar.setTimeZone(TimeZone.getTimeZone(mTimeZoneId));
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.media.Ringtone;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.provider.MediaStore;
+import android.provider.Settings;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+/**
+ * Process-wide cache of ringtone titles by alert uri.
+ *
+ * Looking up a title creates a Ringtone and queries the media provider, which
+ * can be slow on external media, so titles are only ever looked up on a low
+ * priority thread of their own, away from the AsyncHandler thread that
+ * handles the alarms. Callers get the cached title right away, or null and a
+ * callback on the main thread once it has been loaded. The titles of the alerts used by the alarms are loaded
+ * when the app starts. The title of the default alert is dropped when the
+ * default alarm sound changes, and every title when the ringtones do.
+ */
+final class RingtoneTitles {
+
+    interface Listener {
+        /**
+         * Called on the main thread once the title of uri has been loaded.
+         */
+        void onRingtoneTitleLoaded(Uri uri, String title);
+    }
+
+    private static final int MAX_TITLES = 32;
+
+    private static RingtoneTitles sInstance;
+
+    private final Context mContext;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Handler mLoadHandler;
+    private final LruCache<Uri, String> mTitles = new LruCache<Uri, String>(MAX_TITLES);
+    // Listeners waiting for each uri being loaded.
+    private final HashMap<Uri, ArrayList<Listener>> mPending =
+            new HashMap<Uri, ArrayList<Listener>>();
+
+    private final ContentObserver mDefaultAlertObserver = new ContentObserver(mMainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            synchronized (RingtoneTitles.this) {
+                mTitles.remove(Settings.System.DEFAULT_ALARM_ALERT_URI);
+            }
+        }
+    };
+
+    private final ContentObserver mMediaObserver = new ContentObserver(mMainHandler) {
+        @Override
+        public void onChange(boolean selfChange) {
+            synchronized (RingtoneTitles.this) {
+                mTitles.evictAll();
+            }
+        }
+    };
+
+    private RingtoneTitles(Context context) {
+        mContext = context.getApplicationContext();
+        final HandlerThread thread = new HandlerThread("RingtoneTitles",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mLoadHandler = new Handler(thread.getLooper());
+        final ContentResolver resolver = mContext.getContentResolver();
+        resolver.registerContentObserver(Settings.System.getUriFor(Settings.System.ALARM_ALERT),
+                false, mDefaultAlertObserver);
+        resolver.registerContentObserver(MediaStore.Audio.Media.INTERNAL_CONTENT_URI, true,
+                mMediaObserver);
+        resolver.registerContentObserver(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, true,
+                mMediaObserver);
+    }
+
+    static synchronized RingtoneTitles getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new RingtoneTitles(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the title of the ringtone at uri if it is cached. Otherwise
+     * loads it in the background and returns null; listener, if not null, is
+     * then called once it is loaded.
+     */
+    synchronized String getTitle(Uri uri, Listener listener) {
+        final String title = mTitles.get(uri);
+        if (title != null) {
+            return title;
+        }
+        load(uri, listener);
+        return null;
+    }
+
+    /**
+     * Loads the titles of the default alarm alert and of the alerts used by
+     * the alarms in the background.
+     */
+    void prewarm() {
+        mLoadHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final ArrayList<Uri> uris = new ArrayList<Uri>();
+                uris.add(Settings.System.DEFAULT_ALARM_ALERT_URI);
+                final Cursor cursor = mContext.getContentResolver().query(
+                        Alarm.Columns.CONTENT_URI, new String[] { Alarm.Columns.ALERT },
+                        null, null, null);
+                if (cursor != null) {
+                    try {
+                        while (cursor.moveToNext()) {
+                            final String alert = cursor.getString(0);
+                            if (!TextUtils.isEmpty(alert)
+                                    && !Alarms.ALARM_ALERT_SILENT.equals(alert)) {
+                                final Uri uri = Uri.parse(alert);
+                                if (!uris.contains(uri)) {
+                                    uris.add(uri);
+                                }
+                            }
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                synchronized (RingtoneTitles.this) {
+                    for (Uri uri : uris) {
+                        if (mTitles.get(uri) == null) {
+                            load(uri, null);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    // Must be called with the lock held.
+    private void load(final Uri uri, Listener listener) {
+        ArrayList<Listener> listeners = mPending.get(uri);
+        final boolean loading = listeners != null;
+        if (!loading) {
+            listeners = new ArrayList<Listener>();
+            mPending.put(uri, listeners);
+        }
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+        if (loading) {
+            return;
+        }
+        mLoadHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final String title = lookUpTitle(uri);
+                final ArrayList<Listener> waiting;
+                synchronized (RingtoneTitles.this) {
+                    mTitles.put(uri, title);
+                    waiting = mPending.remove(uri);
+                }
+                if (!waiting.isEmpty()) {
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            for (Listener l : waiting) {
+                                l.onRingtoneTitleLoaded(uri, title);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    // Falls back to the title of the default alarm alert when the ringtone is
+    // gone.
+    private String lookUpTitle(Uri uri) {
+        Ringtone r = RingtoneManager.getRingtone(mContext, uri);
+        if (r == null) {
+            r = RingtoneManager.getRingtone(mContext, Settings.System.DEFAULT_ALARM_ALERT_URI);
+        }
+        final String title = r != null ? r.getTitle(mContext) : null;
+        // Cache something so a missing title isn't looked up again.
+        return title != null ? title : "";
+    }
+}
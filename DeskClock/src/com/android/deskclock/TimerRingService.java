@@ -84,7 +84,7 @@ public class TimerRingService extends Service {
             return START_NOT_STICKY;
         }
 
-        play();
+        play(intent);
         // Record the initial call state here so that the new alarm has the
         // newest state.
         mInitialCallState = mTelephonyManager.getCallState();
@@ -95,7 +95,7 @@ public class TimerRingService extends Service {
     // Volume suggested by media team for in-call alarms.
     private static final float IN_CALL_VOLUME = 0.125f;
 
-    private void play() {
+    private void play(Intent intent) {
 
         if (mPlaying) {
             return;
@@ -105,35 +105,45 @@ public class TimerRingService extends Service {
             Log.v("TimerRingService.play()");
         }
 
-        // TODO: Reuse mMediaPlayer instead of creating a new one and/or use
-        // RingtoneManager.
-        mMediaPlayer = new MediaPlayer();
-        mMediaPlayer.setOnErrorListener(new OnErrorListener() {
-            @Override
-            public boolean onError(MediaPlayer mp, int what, int extra) {
-                Log.e("Error occurred while playing audio.");
-                mp.stop();
-                mp.release();
-                mMediaPlayer = null;
-                return true;
+        final boolean inCall =
+                mTelephonyManager.getCallState() != TelephonyManager.CALL_STATE_IDLE;
+        // Use the player prepared ahead of the timer if there is one.
+        final MediaPlayer prepared =
+                AlertPlayers.takePrepared(AlertPlayers.SLOT_TIMER, AlertPlayers.TIMER_SOURCE);
+        if (prepared != null && inCall) {
+            prepared.release();
+        } else if (prepared != null) {
+            mMediaPlayer = prepared;
+            mMediaPlayer.setOnErrorListener(mErrorListener);
+            try {
+                if (startAlarm(mMediaPlayer, true)) {
+                    AlertPlayers.recordLatency(intent, true);
+                }
+                mPlaying = true;
+                return;
+            } catch (Exception ex) {
+                Log.v("Could not start the prepared player");
+                mMediaPlayer.release();
             }
-        });
+        }
+
+        mMediaPlayer = new MediaPlayer();
+        mMediaPlayer.setOnErrorListener(mErrorListener);
 
         try {
             // Check if we are in a call. If we are, use the in-call alarm
             // resource at a low volume to not disrupt the call.
-            if (mTelephonyManager.getCallState()
-                    != TelephonyManager.CALL_STATE_IDLE) {
+            if (inCall) {
                 Log.v("Using the in-call alarm");
                 mMediaPlayer.setVolume(IN_CALL_VOLUME, IN_CALL_VOLUME);
                 setDataSourceFromResource(getResources(), mMediaPlayer,
                         R.raw.in_call_alarm);
             } else {
-                AssetFileDescriptor afd = getAssets().openFd("sounds/Timer_Expire.ogg");
-                mMediaPlayer.setDataSource(
-                        afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+                AlertPlayers.setDataSource(this, mMediaPlayer, AlertPlayers.TIMER_SOURCE);
+            }
+            if (startAlarm(mMediaPlayer, false)) {
+                AlertPlayers.recordLatency(intent, false);
             }
-            startAlarm(mMediaPlayer);
         } catch (Exception ex) {
             Log.v("Using the fallback ringtone");
             // The alert may be on the sd card which could be busy right
@@ -143,7 +153,7 @@ public class TimerRingService extends Service {
                 mMediaPlayer.reset();
                 setDataSourceFromResource(getResources(), mMediaPlayer,
                         R.raw.fallbackring);
-                startAlarm(mMediaPlayer);
+                startAlarm(mMediaPlayer, false);
             } catch (Exception ex2) {
                 // At this point we just don't play anything.
                 Log.e("Failed to play fallback ringtone", ex2);
@@ -153,19 +163,34 @@ public class TimerRingService extends Service {
         mPlaying = true;
     }
 
-    // Do the common stuff when starting the alarm.
-    private void startAlarm(MediaPlayer player)
+    private final OnErrorListener mErrorListener = new OnErrorListener() {
+        @Override
+        public boolean onError(MediaPlayer mp, int what, int extra) {
+            Log.e("Error occurred while playing audio.");
+            mp.stop();
+            mp.release();
+            mMediaPlayer = null;
+            return true;
+        }
+    };
+
+    // Do the common stuff when starting the alarm. Returns true if the player was started.
+    private boolean startAlarm(MediaPlayer player, boolean prepared)
             throws java.io.IOException, IllegalArgumentException,
                    IllegalStateException {
         final AudioManager audioManager = (AudioManager)getSystemService(Context.AUDIO_SERVICE);
         // do not play alarms if stream volume is 0
         // (typically because ringer mode is silent).
         if (audioManager.getStreamVolume(AudioManager.STREAM_ALARM) != 0) {
-            player.setAudioStreamType(AudioManager.STREAM_ALARM);
-            player.setLooping(true);
-            player.prepare();
+            if (!prepared) {
+                player.setAudioStreamType(AudioManager.STREAM_ALARM);
+                player.setLooping(true);
+                player.prepare();
+            }
             player.start();
+            return true;
         }
+        return false;
     }
 
     private void setDataSourceFromResource(Resources resources,
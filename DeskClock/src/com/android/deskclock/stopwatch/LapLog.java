@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock.stopwatch;
+
+import android.content.SharedPreferences;
+
+/**
+ * Append-only log of stopwatch laps, oldest first.
+ *
+ * Each lap is stored as the total stopwatch time at its end, in a growable
+ * long array. The last lap is the one in progress and its total may still
+ * change; every earlier lap is final. That lets the log be saved to and read
+ * from the shared preferences incrementally, touching only the laps added or
+ * changed since the last time.
+ */
+final class LapLog {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] mTotals = new long[INITIAL_CAPACITY];
+    private int mSize;
+    // Number of laps the shared preferences are known to hold.
+    private int mSavedCount;
+
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the total time at the end of the given lap, counting from 0 for
+     * the oldest lap.
+     */
+    long getTotal(int lap) {
+        return mTotals[lap];
+    }
+
+    /**
+     * Returns the length of the given lap, counting from 0 for the oldest lap.
+     */
+    long getLapTime(int lap) {
+        return lap == 0 ? mTotals[0] : mTotals[lap] - mTotals[lap - 1];
+    }
+
+    void append(long total) {
+        if (mSize == mTotals.length) {
+            final long[] totals = new long[mSize * 2];
+            System.arraycopy(mTotals, 0, totals, 0, mSize);
+            mTotals = totals;
+        }
+        mTotals[mSize++] = total;
+    }
+
+    /**
+     * Sets the total of the lap in progress.
+     */
+    void setCurrentTotal(long total) {
+        mTotals[mSize - 1] = total;
+    }
+
+    void clear() {
+        mSize = 0;
+        mSavedCount = 0;
+    }
+
+    /**
+     * Returns the lap totals newest first, or null if there are no laps.
+     */
+    long[] getTotalsNewestFirst() {
+        if (mSize == 0) {
+            return null;
+        }
+        final long[] totals = new long[mSize];
+        for (int i = 0; i < mSize; i++) {
+            totals[i] = mTotals[mSize - 1 - i];
+        }
+        return totals;
+    }
+
+    /**
+     * Puts the laps added since the last save, and the lap that was in
+     * progress then, into editor.
+     */
+    void writeToSharedPref(SharedPreferences.Editor editor) {
+        if (mSize == 0) {
+            return;
+        }
+        editor.putInt(Stopwatches.PREF_LAP_NUM, mSize);
+        for (int i = Math.max(mSavedCount - 1, 0); i < mSize; i++) {
+            editor.putLong(Stopwatches.PREF_LAP_TIME + Integer.toString(i + 1), mTotals[i]);
+        }
+        mSavedCount = mSize;
+    }
+
+    /**
+     * Reads the laps saved by someone else since this log was last saved or
+     * read. Laps this log already has are kept as they are, except the one
+     * that was in progress, which may have been ended since.
+     */
+    void readFromSharedPref(SharedPreferences prefs) {
+        final int count = prefs.getInt(Stopwatches.PREF_LAP_NUM, 0);
+        if (count <= mSize) {
+            return;
+        }
+        mSize = Math.max(mSize - 1, 0);
+        while (mSize < count) {
+            append(prefs.getLong(Stopwatches.PREF_LAP_TIME + Integer.toString(mSize + 1), 0));
+        }
+        mSavedCount = count;
+    }
+}
@@ -54,25 +54,10 @@ public class StopwatchFragment extends DeskClockFragment implements OnSharedPref
     long mStartTime = 0;
     long mAccumulatedTime = 0;
 
-    // Lap information
-    class Lap {
-        Lap () {
-            mLapTime = 0;
-            mTotalTime = 0;
-        }
-
-        Lap (long time, long total) {
-            mLapTime = time;
-            mTotalTime = total;
-        }
-        public long mLapTime;
-        public long mTotalTime;
-    }
-
-    // Adapter for the ListView that shows the lap times.
+    // Adapter for the ListView that shows the lap times, newest first.
     class LapsListAdapter extends BaseAdapter {
 
-        ArrayList<Lap> mLaps = new ArrayList<Lap>();
+        final LapLog mLaps = new LapLog();
         private final LayoutInflater mInflater;
         private final int mBackgroundColor;
 
@@ -86,6 +71,11 @@ public class StopwatchFragment extends DeskClockFragment implements OnSharedPref
             return position;
         }
 
+        // The list shows the newest lap first, the log keeps it last.
+        private int getLapIndex(int position) {
+            return mLaps.size() - 1 - position;
+        }
+
         @Override
         public View getView(int position, View convertView, ViewGroup parent) {
             if (mLaps.size() == 0 || position >= mLaps.size()) {
@@ -97,12 +87,13 @@ public class StopwatchFragment extends DeskClockFragment implements OnSharedPref
             } else {
                 lapInfo =  mInflater.inflate(R.layout.lap_view, parent, false);
             }
+            final int lap = getLapIndex(position);
             TextView count = (TextView)lapInfo.findViewById(R.id.lap_number);
             TextView lapTime = (TextView)lapInfo.findViewById(R.id.lap_time);
             TextView toalTime = (TextView)lapInfo.findViewById(R.id.lap_total);
-            lapTime.setText(Stopwatches.getTimeText(mLaps.get(position).mLapTime));
-            toalTime.setText(Stopwatches.getTimeText(mLaps.get(position).mTotalTime));
-            count.setText(getString(R.string.sw_notification_lap_number, mLaps.size() - position)
+            lapTime.setText(Stopwatches.getTimeText(mLaps.getLapTime(lap)));
+            toalTime.setText(Stopwatches.getTimeText(mLaps.getTotal(lap)));
+            count.setText(getString(R.string.sw_notification_lap_number, lap + 1)
                     .toUpperCase());
 
             lapInfo.setBackgroundColor(mBackgroundColor);
@@ -119,11 +110,11 @@ public class StopwatchFragment extends DeskClockFragment implements OnSharedPref
             if (mLaps.size() == 0 || position >= mLaps.size()) {
                 return null;
             }
-            return mLaps.get(position);
+            return mLaps.getTotal(getLapIndex(position));
         }
 
-        public void addLap(Lap l) {
-            mLaps.add(0, l);
+        public void addLap(long total) {
+            mLaps.append(total);
             notifyDataSetChanged();
         }
 
@@ -132,36 +123,9 @@ public class StopwatchFragment extends DeskClockFragment implements OnSharedPref
             notifyDataSetChanged();
         }
 
-        // Helper function used to get the lap data to be stored in the activitys's bundle
+        // Helper function used to get the lap totals, newest first
         public long [] getLapTimes() {
-            int size = mLaps.size();
-            if (size == 0) {
-                return null;
-            }
-            long [] laps = new long[size];
-            for (int i = 0; i < size; i ++) {
-                laps[i] = mLaps.get(i).mTotalTime;
-            }
-            return laps;
-        }
-
-        // Helper function to restore adapter's data from the activity's bundle
-        public void setLapTimes(long [] laps) {
-            if (laps == null || laps.length == 0) {
-                return;
-            }
-
-            int size = laps.length;
-            mLaps.clear();
-            for (int i = 0; i < size; i ++) {
-                mLaps.add(new Lap (laps[i], 0));
-            }
-            long totalTime = 0;
-            for (int i = size -1; i >= 0; i --) {
-                totalTime += laps[i];
-                mLaps.get(i).mTotalTime = totalTime;
-            }
-            notifyDataSetChanged();
+            return mLaps.getTotalsNewestFirst();
         }
     }
 
@@ -550,16 +514,16 @@ public class StopwatchFragment extends DeskClockFragment implements OnSharedPref
     private void addLapTime(long time) {
         int size = mLapsAdapter.getCount();
         long curTime = time - mStartTime + mAccumulatedTime;
+        final LapLog laps = mLapsAdapter.mLaps;
         if (size == 0) {
             // Always show the ending lap and a new one
-            mLapsAdapter.addLap(new Lap(curTime, curTime));
-            mLapsAdapter.addLap(new Lap(0, curTime));
+            mLapsAdapter.addLap(curTime);
+            mLapsAdapter.addLap(curTime);
             mTime.setIntervalTime(curTime);
         } else {
-            long lapTime = curTime - ((Lap) mLapsAdapter.getItem(1)).mTotalTime;
-            ((Lap)mLapsAdapter.getItem(0)).mLapTime = lapTime;
-            ((Lap)mLapsAdapter.getItem(0)).mTotalTime = curTime;
-            mLapsAdapter.addLap(new Lap(0, 0));
+            laps.setCurrentTotal(curTime);
+            long lapTime = laps.getLapTime(size - 1);
+            mLapsAdapter.addLap(curTime);
             mTime.setMarkerTime(lapTime);
         //    mTime.setIntervalTime(lapTime * 10);
         }
@@ -573,9 +537,7 @@ public class StopwatchFragment extends DeskClockFragment implements OnSharedPref
 
     private void updateCurrentLap(long totalTime) {
         if (mLapsAdapter.getCount() > 0) {
-            Lap curLap = (Lap)mLapsAdapter.getItem(0);
-            curLap.mLapTime = totalTime - ((Lap)mLapsAdapter.getItem(1)).mTotalTime;
-            curLap.mTotalTime = totalTime;
+            mLapsAdapter.mLaps.setCurrentTotal(totalTime);
             mLapsAdapter.notifyDataSetChanged();
         }
     }
@@ -617,14 +579,8 @@ public class StopwatchFragment extends DeskClockFragment implements OnSharedPref
         editor.putLong (Stopwatches.PREF_ACCUM_TIME, mAccumulatedTime);
         editor.putInt (Stopwatches.PREF_STATE, mState);
         if (mLapsAdapter != null) {
-            long [] laps = mLapsAdapter.getLapTimes();
-            if (laps != null) {
-                editor.putInt (Stopwatches.PREF_LAP_NUM, laps.length);
-                for (int i = 0; i < laps.length; i++) {
-                    String key = Stopwatches.PREF_LAP_TIME + Integer.toString(laps.length - i);
-                    editor.putLong (key, laps[i]);
-                }
-            }
+            // Only the laps added since the last save are written.
+            mLapsAdapter.mLaps.writeToSharedPref(editor);
         }
         if (mState == Stopwatches.STOPWATCH_RUNNING) {
             editor.putLong(Stopwatches.NOTIF_CLOCK_BASE, mStartTime-mAccumulatedTime);
@@ -647,19 +603,12 @@ public class StopwatchFragment extends DeskClockFragment implements OnSharedPref
         mStartTime = prefs.getLong(Stopwatches.PREF_START_TIME, 0);
         mAccumulatedTime = prefs.getLong(Stopwatches.PREF_ACCUM_TIME, 0);
         mState = prefs.getInt(Stopwatches.PREF_STATE, Stopwatches.STOPWATCH_RESET);
-        int numLaps = prefs.getInt(Stopwatches.PREF_LAP_NUM, Stopwatches.STOPWATCH_RESET);
         if (mLapsAdapter != null) {
-            long[] oldLaps = mLapsAdapter.getLapTimes();
-            if (oldLaps == null || oldLaps.length < numLaps) {
-                long[] laps = new long[numLaps];
-                long prevLapElapsedTime = 0;
-                for (int lap_i = 0; lap_i < numLaps; lap_i++) {
-                    String key = Stopwatches.PREF_LAP_TIME + Integer.toString(lap_i + 1);
-                    long lap = prefs.getLong(key, 0);
-                    laps[numLaps - lap_i - 1] = lap - prevLapElapsedTime;
-                    prevLapElapsedTime = lap;
-                }
-                mLapsAdapter.setLapTimes(laps);
+            // Only the laps added since the last read are read.
+            final int oldCount = mLapsAdapter.getCount();
+            mLapsAdapter.mLaps.readFromSharedPref(prefs);
+            if (mLapsAdapter.getCount() != oldCount) {
+                mLapsAdapter.notifyDataSetChanged();
             }
         }
         if (prefs.getBoolean(Stopwatches.PREF_UPDATE_CIRCLE, true)) {
@@ -27,21 +27,38 @@ import android.view.View;
 import android.view.accessibility.AccessibilityManager;
 import android.widget.TextView;
 
+import java.text.DecimalFormatSymbols;
+
 import com.android.deskclock.R;
 import com.android.deskclock.Utils;
 
 
 public class CountingTimerView extends View {
-    private static final String TWO_DIGITS = "%02d";
-    private static final String ONE_DIGIT = "%01d";
-    private static final String NEG_TWO_DIGITS = "-%02d";
-    private static final String NEG_ONE_DIGIT = "-%01d";
+    // Index of the minus sign in the glyph width tables, after the ten digits.
+    private static final int MINUS_GLYPH = 10;
     private static final float TEXT_SIZE_TO_WIDTH_RATIO = 0.75f;
     // This is the ratio of the font typeface we need to offset the font by vertically to align it
     // vertically center.
     private static final float FONT_VERTICAL_OFFSET = 0.14f;
 
-    private String mHours, mMinutes, mSeconds, mHunderdths;
+    // The digits drawn for each field, with an optional leading minus sign.
+    // A length of 0 means the field is not shown.
+    // Rounding up 99:59:59 and a fraction shows 100 hours.
+    private final char[] mHours = new char[4];
+    private final char[] mMinutes = new char[3];
+    private final char[] mSeconds = new char[2];
+    private final char[] mHundredths = new char[2];
+    private int mHoursLength, mMinutesLength, mSecondsLength, mHundredthsLength;
+    private final char mZeroDigit;
+    // Advance widths of the digits and the minus sign for each digit paint,
+    // so field widths are known without measuring text on every update.
+    private final float[] mBigGlyphWidths = new float[MINUS_GLYPH + 1];
+    private final float[] mBigThinGlyphWidths = new float[MINUS_GLYPH + 1];
+    private final float[] mMedGlyphWidths = new float[MINUS_GLYPH + 1];
+    // Last values given to the content description, to avoid rebuilding it
+    // when only the hundredths changed.
+    private int mDescribedHours = -1, mDescribedMinutes = -1, mDescribedSeconds = -1;
+    private boolean mDescribedNeg;
     private final String mHoursLabel, mMinutesLabel, mSecondsLabel;
     private float mHoursWidth, mMinutesWidth, mSecondsWidth, mHundredthsWidth;
     private float mHoursLabelWidth, mMinutesLabelWidth, mSecondsLabelWidth, mHundredthsSepWidth;
@@ -100,6 +117,7 @@ public class CountingTimerView extends View {
         mDefaultColor = mWhiteColor;
         mPressedColor = r.getColor(Utils.getPressedColorId());
         mRedColor = r.getColor(R.color.clock_red);
+        mZeroDigit = DecimalFormatSymbols.getInstance().getZeroDigit();
 
         mPaintBig.setAntiAlias(true);
         mPaintBig.setStyle(Paint.Style.STROKE);
@@ -127,9 +145,56 @@ public class CountingTimerView extends View {
         mPaintLabel.setTypeface(mRobotoLabel);
         mPaintLabel.setTextSize(r.getDimension(R.dimen.label_font_size));
 
+        measureGlyphs();
         setTextColor(mDefaultColor);
     }
 
+    private void measureGlyphs() {
+        measureGlyphs(mPaintBig, mBigGlyphWidths);
+        measureGlyphs(mPaintBigThin, mBigThinGlyphWidths);
+        measureGlyphs(mPaintMed, mMedGlyphWidths);
+    }
+
+    private void measureGlyphs(Paint paint, float[] widths) {
+        final char[] glyph = new char[1];
+        for (int i = 0; i < MINUS_GLYPH; i++) {
+            glyph[0] = (char) (mZeroDigit + i);
+            widths[i] = paint.measureText(glyph, 0, 1);
+        }
+        glyph[0] = '-';
+        widths[MINUS_GLYPH] = paint.measureText(glyph, 0, 1);
+    }
+
+    private float measureDigits(char[] digits, int length, float[] widths) {
+        float width = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = digits[i];
+            width += c == '-' ? widths[MINUS_GLYPH] : widths[c - mZeroDigit];
+        }
+        return width;
+    }
+
+    /**
+     * Writes value, which must be below 1000, into digits with at least
+     * minDigits digits, preceded by a minus sign if neg is set.
+     *
+     * @return the number of chars written
+     */
+    private int formatDigits(char[] digits, long value, int minDigits, boolean neg) {
+        int length = 0;
+        if (neg) {
+            digits[length++] = '-';
+        }
+        if (value >= 100) {
+            digits[length++] = (char) (mZeroDigit + value / 100);
+        }
+        if (value >= 10 || minDigits == 2) {
+            digits[length++] = (char) (mZeroDigit + value / 10 % 10);
+        }
+        digits[length++] = (char) (mZeroDigit + value % 10);
+        return length;
+    }
+
     protected void setTextColor(int textColor) {
         mPaintBig.setColor(textColor);
         mPaintBigThin.setColor(textColor);
@@ -139,7 +204,6 @@ public class CountingTimerView extends View {
 
     public void setTime(long time, boolean showHundredths, boolean update) {
         boolean neg = false, showNeg = false;
-        String format = null;
         if (time < 0) {
             time = -time;
             neg = showNeg = true;
@@ -177,60 +241,94 @@ public class CountingTimerView extends View {
             }
         }
 
-        if (hours >= 10) {
-            format = showNeg ? NEG_TWO_DIGITS : TWO_DIGITS;
-            mHours = String.format(format, hours);
-        } else if (hours > 0) {
-            format = showNeg ? NEG_ONE_DIGIT : ONE_DIGIT;
-            mHours = String.format(format, hours);
+        if (hours > 0) {
+            mHoursLength = formatDigits(mHours, hours, 1, showNeg);
         } else {
-            mHours = null;
+            mHoursLength = 0;
         }
 
-        if (minutes >= 10 || hours > 0) {
-            format = (showNeg && hours == 0) ? NEG_TWO_DIGITS : TWO_DIGITS;
-            mMinutes = String.format(format, minutes);
-        } else {
-            format = (showNeg && hours == 0) ? NEG_ONE_DIGIT : ONE_DIGIT;
-            mMinutes = String.format(format, minutes);
-        }
-
-        mSeconds = String.format(TWO_DIGITS, seconds);
+        mMinutesLength = formatDigits(mMinutes, minutes, hours > 0 ? 2 : 1,
+                showNeg && hours == 0);
+        mSecondsLength = formatDigits(mSeconds, seconds, 2, false);
         if (showHundredths) {
-            mHunderdths = String.format(TWO_DIGITS, hundreds);
+            mHundredthsLength = formatDigits(mHundredths, hundreds, 2, false);
         } else {
-            mHunderdths = null;
+            mHundredthsLength = 0;
         }
         mRemeasureText = true;
 
         if (update) {
-            setContentDescription(getTimeStringForAccessibility((int) hours, (int) minutes,
-                    (int) seconds, showNeg, getResources()));
+            if (hours != mDescribedHours || minutes != mDescribedMinutes
+                    || seconds != mDescribedSeconds || showNeg != mDescribedNeg) {
+                mDescribedHours = (int) hours;
+                mDescribedMinutes = (int) minutes;
+                mDescribedSeconds = (int) seconds;
+                mDescribedNeg = showNeg;
+                setContentDescription(getTimeStringForAccessibility((int) hours, (int) minutes,
+                        (int) seconds, showNeg, getResources()));
+            }
             invalidate();
         }
     }
+
+    /**
+     * Returns the seconds that setTime() shows for the given time when
+     * hundredths are not shown. Positive times are rounded up to the next
+     * second once they are at least a hundredth past it, negative times are
+     * truncated.
+     */
+    public static long getDisplayedSeconds(long time) {
+        if (time < 0) {
+            return -(-time / 1000);
+        }
+        long seconds = time / 1000;
+        if ((time - seconds * 1000) / 10 != 0) {
+            seconds++;
+        }
+        return seconds;
+    }
+
+    /**
+     * Returns the number of milliseconds until getDisplayedSeconds() changes,
+     * assuming time counts down by one millisecond per millisecond.
+     */
+    public static long getMillisUntilDisplayChange(long time) {
+        if (time < 0) {
+            return 1000 - (-time % 1000);
+        }
+        if (time < 10) {
+            // Shows 0 from here until it goes a full second below zero.
+            return time + 1000;
+        }
+        final long millis = time % 1000;
+        // The display drops a second when the hundredths reach zero, 9ms past
+        // the second. Within those 9ms the display already dropped, and holds
+        // until the hundredths reach zero again in the next second down.
+        return millis >= 10 ? millis - 9 : millis + 991;
+    }
+
     private void setTotalTextWidth() {
         mTotalTextWidth = 0;
-        if (mHours != null) {
-            mHoursWidth = mPaintBig.measureText(mHours);
+        if (mHoursLength != 0) {
+            mHoursWidth = measureDigits(mHours, mHoursLength, mBigGlyphWidths);
             mTotalTextWidth += mHoursWidth;
             mHoursLabelWidth = mPaintLabel.measureText(mHoursLabel);
             mTotalTextWidth += mHoursLabelWidth;
         }
-        if (mMinutes != null) {
-            mMinutesWidth =  mPaintBig.measureText(mMinutes);
+        if (mMinutesLength != 0) {
+            mMinutesWidth = measureDigits(mMinutes, mMinutesLength, mBigGlyphWidths);
             mTotalTextWidth += mMinutesWidth;
             mMinutesLabelWidth = mPaintLabel.measureText(mMinutesLabel);
             mTotalTextWidth += mMinutesLabelWidth;
         }
-        if (mSeconds != null) {
-            mSecondsWidth = mPaintBigThin.measureText(mSeconds);
+        if (mSecondsLength != 0) {
+            mSecondsWidth = measureDigits(mSeconds, mSecondsLength, mBigThinGlyphWidths);
             mTotalTextWidth += mSecondsWidth;
             mSecondsLabelWidth = mPaintLabel.measureText(mSecondsLabel);
             mTotalTextWidth += mSecondsLabelWidth;
         }
-        if (mHunderdths != null) {
-            mHundredthsWidth = mPaintMed.measureText(mHunderdths);
+        if (mHundredthsLength != 0) {
+            mHundredthsWidth = measureDigits(mHundredths, mHundredthsLength, mMedGlyphWidths);
             mTotalTextWidth += mHundredthsWidth;
             mHundredthsSepWidth = mPaintLabel.measureText(HUNDREDTH_SEPERATOR);
             mTotalTextWidth += mHundredthsSepWidth;
@@ -248,6 +346,7 @@ public class CountingTimerView extends View {
                 mPaintBig.setTextSize( mPaintBig.getTextSize() * sizeRatio);
                 mPaintBigThin.setTextSize( mPaintBigThin.getTextSize() * sizeRatio);
                 mPaintMed.setTextSize( mPaintMed.getTextSize() * sizeRatio);
+                measureGlyphs();
                 mTotalTextWidth *= sizeRatio;
                 mMinutesWidth *= sizeRatio;
                 mHoursWidth *= sizeRatio;
@@ -288,10 +387,16 @@ public class CountingTimerView extends View {
     }
 
     public String getTimeString() {
-        if (mHours == null) {
-            return String.format("%s:%s.%s",mMinutes, mSeconds,  mHunderdths);
+        final StringBuilder s = new StringBuilder(12);
+        if (mHoursLength != 0) {
+            s.append(mHours, 0, mHoursLength).append(':');
+        }
+        s.append(mMinutes, 0, mMinutesLength).append(':');
+        s.append(mSeconds, 0, mSecondsLength);
+        if (mHundredthsLength != 0) {
+            s.append('.').append(mHundredths, 0, mHundredthsLength);
         }
-        return String.format("%s:%s:%s.%s",mHours, mMinutes, mSeconds,  mHunderdths);
+        return s.toString();
     }
 
     private static String getTimeStringForAccessibility(int hours, int minutes, int seconds,
@@ -432,28 +537,28 @@ public class CountingTimerView extends View {
         mPaintLabel.setColor(textColor);
         mPaintMed.setColor(textColor);
 
-        if (mHours != null) {
-            canvas.drawText(mHours, textXstart, textYstart, mPaintBig);
+        if (mHoursLength != 0) {
+            canvas.drawText(mHours, 0, mHoursLength, textXstart, textYstart, mPaintBig);
             textXstart += mHoursWidth;
             canvas.drawText(mHoursLabel, textXstart, labelYStart, mPaintLabel);
             textXstart += mHoursLabelWidth;
         }
-        if (mMinutes != null) {
-            canvas.drawText(mMinutes, textXstart, textYstart, mPaintBig);
+        if (mMinutesLength != 0) {
+            canvas.drawText(mMinutes, 0, mMinutesLength, textXstart, textYstart, mPaintBig);
             textXstart += mMinutesWidth;
             canvas.drawText(mMinutesLabel, textXstart, labelYStart, mPaintLabel);
             textXstart += mMinutesLabelWidth;
         }
-        if (mSeconds != null) {
-            canvas.drawText(mSeconds, textXstart, textYstart, mPaintBigThin);
+        if (mSecondsLength != 0) {
+            canvas.drawText(mSeconds, 0, mSecondsLength, textXstart, textYstart, mPaintBigThin);
             textXstart += mSecondsWidth;
             canvas.drawText(mSecondsLabel, textXstart, labelYStart, mPaintLabel);
             textXstart += mSecondsLabelWidth;
         }
-        if (mHunderdths != null) {
+        if (mHundredthsLength != 0) {
             canvas.drawText(HUNDREDTH_SEPERATOR, textXstart, textYstart, mPaintLabel);
             textXstart += mHundredthsSepWidth;
-            canvas.drawText(mHunderdths, textXstart, textYstart, mPaintMed);
+            canvas.drawText(mHundredths, 0, mHundredthsLength, textXstart, textYstart, mPaintMed);
         }
     }
 
@@ -150,7 +150,7 @@ public class TimerFragment extends DeskClockFragment
                 	if(t.mView != null) {
                 		((TimerListItem)t.mView).stop();
                 	}
-                    t.deleteFromSharedPref(mmPrefs);
+                    TimerStore.getInstance(mContext).deleteTimer(id);
                     mTimers.remove(i);
                     notifyDataSetChanged();
                     return;
@@ -260,16 +260,16 @@ public class TimerFragment extends DeskClockFragment
         }
 
         public void onSaveInstanceState(Bundle outState) {
-            TimerObj.putTimersInSharedPrefs(mmPrefs, mTimers);
+            TimerStore.getInstance(mContext).putTimers(mTimers);
         }
 
         public void onRestoreInstanceState(Bundle outState) {
-            TimerObj.getTimersFromSharedPrefs(mmPrefs, mTimers);
+            TimerStore.getInstance(mContext).getTimers(mTimers);
             notifyDataSetChanged();
         }
 
         public void saveGlobalState() {
-            TimerObj.putTimersInSharedPrefs(mmPrefs, mTimers);
+            TimerStore.getInstance(mContext).putTimers(mTimers);
         }
     }
 
@@ -294,7 +294,7 @@ public class TimerFragment extends DeskClockFragment
         @Override
         public void onRestoreInstanceState(Bundle outState) {
             // This adapter loads a subset
-            TimerObj.getTimersFromSharedPrefs(mmPrefs, mTimers, TimerObj.STATE_TIMESUP);
+            TimerStore.getInstance(mContext).getTimers(mTimers, TimerObj.STATE_TIMESUP);
 
             if (getCount() == 0) {
                 mOnEmptyListListener.onEmptyList();
@@ -309,6 +309,15 @@ public class TimerFragment extends DeskClockFragment
         }
     }
 
+    // Instrumentation: ticks that changed at least one view vs. ticks that did not.
+    private int mTicksRendered;
+    private int mTicksSkipped;
+
+    /**
+     * Updates the timers whose displayed seconds or blink phase changed, then
+     * posts itself for the next instant at which any of them changes again.
+     * Nothing is posted while no timer is ticking or blinking.
+     */
     private final Runnable mClockTick = new Runnable() {
         boolean mVisible = true;
         final static int TIME_PERIOD_MS = 1000;
@@ -316,38 +325,68 @@ public class TimerFragment extends DeskClockFragment
 
         @Override
         public void run() {
+            final long now = Utils.getTimeNow();
             // Setup for blinking
-            boolean visible = Utils.getTimeNow() % TIME_PERIOD_MS < SPLIT;
+            boolean visible = now % TIME_PERIOD_MS < SPLIT;
             boolean toggle = mVisible != visible;
             mVisible = visible;
+            boolean rendered = false;
+            boolean blinking = false;
+            long nextDelay = Long.MAX_VALUE;
             for (int i = 0; i < mAdapter.getCount(); i ++) {
                 TimerObj t = (TimerObj) mAdapter.getItem(i);
-                if (t.mState == TimerObj.STATE_RUNNING || t.mState == TimerObj.STATE_TIMESUP) {
+                TimerListItem v = (TimerListItem) t.mView;
+                if (t.isTicking()) {
                     long timeLeft = t.updateTimeLeft(false);
-                    if ((TimerListItem)(t.mView) != null) {
-                        ((TimerListItem)(t.mView)).setTime(timeLeft, false);
+                    if (v != null && v.setTime(timeLeft, false)) {
+                        rendered = true;
+                    }
+                    nextDelay = Math.min(nextDelay,
+                            CountingTimerView.getMillisUntilDisplayChange(timeLeft));
+                    if (timeLeft > 0) {
+                        // The display holds at 0 past the end, tick when it
+                        // ends to go times up.
+                        nextDelay = Math.min(nextDelay, timeLeft);
                     }
                 }
                 if (t.mTimeLeft <= 0 && t.mState != TimerObj.STATE_DONE
-                        && t.mState != TimerObj.STATE_RESTART) {
+                        && t.mState != TimerObj.STATE_RESTART
+                        && t.mState != TimerObj.STATE_TIMESUP) {
                     t.mState = TimerObj.STATE_TIMESUP;
                     TimerFragment.this.setTimerButtons(t);
-                    if ((TimerListItem)(t.mView) != null) {
-                        ((TimerListItem)(t.mView)).timesUp();
+                    if (v != null) {
+                        v.timesUp();
                     }
+                    rendered = true;
+                    // Now that it counts up, tick again on its next second.
+                    nextDelay = Math.min(nextDelay,
+                            CountingTimerView.getMillisUntilDisplayChange(t.mTimeLeft));
                 }
 
                 // The blinking
-                if (toggle && (TimerListItem)(t.mView) != null) {
-                    if (t.mState == TimerObj.STATE_TIMESUP) {
-                        ((TimerListItem)(t.mView)).setCircleBlink(mVisible);
-                    }
-                    if (t.mState == TimerObj.STATE_STOPPED) {
-                        ((TimerListItem)(t.mView)).setTextBlink(mVisible);
+                if (t.mState == TimerObj.STATE_TIMESUP || t.mState == TimerObj.STATE_STOPPED) {
+                    blinking = true;
+                    if (toggle && v != null) {
+                        if (t.mState == TimerObj.STATE_TIMESUP) {
+                            v.setCircleBlink(mVisible);
+                        } else {
+                            v.setTextBlink(mVisible);
+                        }
+                        rendered = true;
                     }
                 }
             }
-            mTimersList.postDelayed(mClockTick, 20);
+            if (rendered) {
+                mTicksRendered++;
+            } else {
+                mTicksSkipped++;
+            }
+            if (blinking) {
+                nextDelay = Math.min(nextDelay, SPLIT - now % SPLIT);
+            }
+            if (nextDelay != Long.MAX_VALUE) {
+                mTimersList.postDelayed(mClockTick, nextDelay);
+            }
         }
     };
 
@@ -672,10 +711,12 @@ public class TimerFragment extends DeskClockFragment
             case ClickAction.ACTION_PLUS_ONE:
                 onPlusOneButtonPressed(clickAction.mTimer);
                 setTimerButtons(clickAction.mTimer);
+                rescheduleClockTicks();
                 break;
             case ClickAction.ACTION_STOP:
                 onStopButtonPressed(clickAction.mTimer);
                 setTimerButtons(clickAction.mTimer);
+                rescheduleClockTicks();
                 break;
             default:
                 break;
@@ -843,19 +884,31 @@ public class TimerFragment extends DeskClockFragment
     }
 
     private void startClockTicks() {
-        mTimersList.postDelayed(mClockTick, 20);
+        mTimersList.removeCallbacks(mClockTick);
+        mTimersList.post(mClockTick);
         mTicking = true;
     }
     private void stopClockTicks() {
         if (mTicking) {
             mTimersList.removeCallbacks(mClockTick);
             mTicking = false;
+            Log.v(TAG, "Clock ticks rendered " + mTicksRendered + ", skipped " + mTicksSkipped);
+            mTicksRendered = 0;
+            mTicksSkipped = 0;
+        }
+    }
+
+    // The next tick is computed from the current timer states, so it has to
+    // be recomputed whenever a timer starts, stops or is replaced.
+    private void rescheduleClockTicks() {
+        if (mTicking) {
+            startClockTicks();
         }
     }
 
     private void updateTimersState(TimerObj t, String action) {
         if (!Timers.DELETE_TIMER.equals(action)) {
-            t.writeToSharedPref(mPrefs);
+            TimerStore.getInstance(getActivity()).putTimer(t);
         }
         Intent i = new Intent();
         i.setAction(action);
@@ -905,6 +958,7 @@ public class TimerFragment extends DeskClockFragment
                     cancelTimerNotification(timerId);
                 }
                 mTimersList.setAdapter(mAdapter);
+                rescheduleClockTicks();
                 SharedPreferences.Editor editor = prefs.edit();
                 editor.putBoolean(Timers.FROM_NOTIFICATION, false);
                 editor.apply();
@@ -918,6 +972,7 @@ public class TimerFragment extends DeskClockFragment
                 mAdapter = createAdapter(getActivity(), mPrefs);
                 mAdapter.onRestoreInstanceState(null);
                 mTimersList.setAdapter(mAdapter);
+                rescheduleClockTicks();
             }
         }
     }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock.timer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Binary min-heap of running timers ordered by their times up time.
+ *
+ * The heap position of each timer is tracked by id, so a timer can be
+ * added, removed or moved after its times up time changed in O(log n).
+ */
+final class TimerHeap {
+
+    private final ArrayList<TimerObj> mHeap = new ArrayList<TimerObj>();
+    private final HashMap<Integer, Integer> mPositions = new HashMap<Integer, Integer>();
+
+    int size() {
+        return mHeap.size();
+    }
+
+    /**
+     * Returns the timer that expires first, or null if the heap is empty.
+     */
+    TimerObj peek() {
+        return mHeap.isEmpty() ? null : mHeap.get(0);
+    }
+
+    /**
+     * Adds the timer, or replaces the timer with the same id and moves it to
+     * the position matching its times up time.
+     */
+    void put(TimerObj timer) {
+        final Integer position = mPositions.get(timer.mTimerId);
+        if (position == null) {
+            mHeap.add(timer);
+            mPositions.put(timer.mTimerId, mHeap.size() - 1);
+            siftUp(mHeap.size() - 1);
+        } else {
+            mHeap.set(position, timer);
+            siftDown(siftUp(position));
+        }
+    }
+
+    void remove(int timerId) {
+        final Integer position = mPositions.remove(timerId);
+        if (position == null) {
+            return;
+        }
+        final int last = mHeap.size() - 1;
+        final TimerObj moved = mHeap.remove(last);
+        if (position != last) {
+            mHeap.set(position, moved);
+            mPositions.put(moved.mTimerId, position);
+            siftDown(siftUp(position));
+        }
+    }
+
+    void clear() {
+        mHeap.clear();
+        mPositions.clear();
+    }
+
+    /**
+     * Adds every timer that expires at or before time to timers. Only the
+     * part of the heap holding such timers is visited.
+     */
+    void getExpiringBy(long time, ArrayList<TimerObj> timers) {
+        getExpiringBy(0, time, timers);
+    }
+
+    private void getExpiringBy(int position, long time, ArrayList<TimerObj> timers) {
+        if (position >= mHeap.size()) {
+            return;
+        }
+        final TimerObj t = mHeap.get(position);
+        if (t.getTimesupTime() > time) {
+            return;
+        }
+        timers.add(t);
+        getExpiringBy(2 * position + 1, time, timers);
+        getExpiringBy(2 * position + 2, time, timers);
+    }
+
+    /**
+     * Returns the timer that expires first after time, or null if none does.
+     * Only the part of the heap expiring by time and its children are
+     * visited.
+     */
+    TimerObj getFirstExpiringAfter(long time) {
+        return getFirstExpiringAfter(0, time);
+    }
+
+    private TimerObj getFirstExpiringAfter(int position, long time) {
+        if (position >= mHeap.size()) {
+            return null;
+        }
+        final TimerObj t = mHeap.get(position);
+        if (t.getTimesupTime() > time) {
+            // Every timer below expires later.
+            return t;
+        }
+        final TimerObj left = getFirstExpiringAfter(2 * position + 1, time);
+        final TimerObj right = getFirstExpiringAfter(2 * position + 2, time);
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        return left.getTimesupTime() <= right.getTimesupTime() ? left : right;
+    }
+
+    private int siftUp(int position) {
+        final TimerObj t = mHeap.get(position);
+        final long time = t.getTimesupTime();
+        while (position > 0) {
+            final int parent = (position - 1) / 2;
+            final TimerObj p = mHeap.get(parent);
+            if (p.getTimesupTime() <= time) {
+                break;
+            }
+            mHeap.set(position, p);
+            mPositions.put(p.mTimerId, position);
+            position = parent;
+        }
+        mHeap.set(position, t);
+        mPositions.put(t.mTimerId, position);
+        return position;
+    }
+
+    private void siftDown(int position) {
+        final int size = mHeap.size();
+        final TimerObj t = mHeap.get(position);
+        final long time = t.getTimesupTime();
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size
+                    && mHeap.get(child + 1).getTimesupTime() < mHeap.get(child).getTimesupTime()) {
+                child++;
+            }
+            final TimerObj c = mHeap.get(child);
+            if (c.getTimesupTime() >= time) {
+                break;
+            }
+            mHeap.set(position, c);
+            mPositions.put(c.mTimerId, position);
+            position = child;
+        }
+        mHeap.set(position, t);
+        mPositions.put(t.mTimerId, position);
+    }
+}
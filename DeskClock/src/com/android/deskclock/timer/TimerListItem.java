@@ -31,6 +31,9 @@ public class TimerListItem extends LinearLayout {
     CircleTimerView mCircleView;
 
     long mTimerLength;
+    // Seconds currently shown by mTimerText, to skip updates that change nothing.
+    private long mDisplayedSeconds;
+    private boolean mHasDisplayedSeconds;
 
     public TimerListItem(Context context) {
         this(context, null);
@@ -107,11 +110,24 @@ public class TimerListItem extends LinearLayout {
         mCircleView.setVisibility(blink ? INVISIBLE : VISIBLE);
     }
 
-    public void setTime(long time, boolean forceUpdate) {
+    /**
+     * Shows the given time left. Does nothing unless forceUpdate is set or the
+     * displayed seconds differ from the last time shown.
+     *
+     * @return true if the text was updated
+     */
+    public boolean setTime(long time, boolean forceUpdate) {
         if (mTimerText == null) {
             mTimerText = (CountingTimerView)findViewById(R.id.timer_time_text);
         }
-        mTimerText.setTime(time, false, forceUpdate);
+        final long displayedSeconds = CountingTimerView.getDisplayedSeconds(time);
+        if (!forceUpdate && mHasDisplayedSeconds && displayedSeconds == mDisplayedSeconds) {
+            return false;
+        }
+        mDisplayedSeconds = displayedSeconds;
+        mHasDisplayedSeconds = true;
+        mTimerText.setTime(time, false, true);
+        return true;
     }
 
     // Used by animator to animate the size of a timer
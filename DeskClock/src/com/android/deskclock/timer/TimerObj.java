@@ -74,30 +74,8 @@ public class TimerObj implements Parcelable {
         }
     };
 
-    public void writeToSharedPref(SharedPreferences prefs) {
-        SharedPreferences.Editor editor = prefs.edit();
-        String key = PREF_TIMER_ID + Integer.toString(mTimerId);
-        String id = Integer.toString(mTimerId);
-        editor.putInt (key, mTimerId);
-        key = PREF_START_TIME + id;
-        editor.putLong (key, mStartTime);
-        key = PREF_TIME_LEFT + id;
-        editor.putLong (key, mTimeLeft);
-        key = PREF_ORIGINAL_TIME + id;
-        editor.putLong (key, mOriginalLength);
-        key = PREF_SETUP_TIME + id;
-        editor.putLong (key, mSetupLength);
-        key = PREF_STATE + id;
-        editor.putInt (key, mState);
-        Set <String> timersList = prefs.getStringSet(PREF_TIMERS_LIST, new HashSet<String>());
-        timersList.add(id);
-        editor.putStringSet(PREF_TIMERS_LIST, timersList);
-        key = PREF_LABEL + id;
-        editor.putString(key, mLabel);
-        editor.apply();
-    }
-
-
+    // Timers are saved in the TimerStore. The shared prefs methods below are
+    // only used to move timers saved by older versions into the store.
     public void readFromSharedPref(SharedPreferences prefs) {
         String id = Integer.toString(mTimerId);
         String key = PREF_START_TIME + id;
@@ -167,6 +145,16 @@ public class TimerObj implements Parcelable {
         init(0);
     }
 
+    public TimerObj(TimerObj other) {
+        mTimerId = other.mTimerId;
+        mStartTime = other.mStartTime;
+        mTimeLeft = other.mTimeLeft;
+        mOriginalLength = other.mOriginalLength;
+        mSetupLength = other.mSetupLength;
+        mState = other.mState;
+        mLabel = other.mLabel;
+    }
+
     public TimerObj(long timerLength) {
       init(timerLength);
     }
@@ -205,6 +193,20 @@ public class TimerObj implements Parcelable {
         return mStartTime + mOriginalLength;
     }
 
+    /**
+     * Returns true if the other timer has the same stored state as this one.
+     * The view is not compared.
+     */
+    public boolean contentEquals(TimerObj other) {
+        return mTimerId == other.mTimerId
+                && mStartTime == other.mStartTime
+                && mTimeLeft == other.mTimeLeft
+                && mOriginalLength == other.mOriginalLength
+                && mSetupLength == other.mSetupLength
+                && mState == other.mState
+                && (mLabel == null ? other.mLabel == null : mLabel.equals(other.mLabel));
+    }
+
 
     public static void getTimersFromSharedPrefs(
             SharedPreferences prefs, ArrayList<TimerObj> timers) {
@@ -226,32 +228,6 @@ public class TimerObj implements Parcelable {
         }
     }
 
-    public static void getTimersFromSharedPrefs(
-            SharedPreferences prefs, ArrayList<TimerObj> timers, int match) {
-        Object[] timerStrings = prefs.getStringSet(PREF_TIMERS_LIST, new HashSet<String>())
-                .toArray();
-        if (timerStrings.length > 0) {
-            for (int i = 0; i < timerStrings.length; i++) {
-                TimerObj t = new TimerObj();
-                t.mTimerId = Integer.parseInt((String) timerStrings[i]);
-                t.readFromSharedPref(prefs);
-                if (t.mState == match) {
-                    timers.add(t);
-                }
-            }
-        }
-    }
-
-    public static void putTimersInSharedPrefs(
-            SharedPreferences prefs, ArrayList<TimerObj> timers) {
-        if (timers.size() > 0) {
-            for (int i = 0; i < timers.size(); i++) {
-                TimerObj t = timers.get(i);
-                timers.get(i).writeToSharedPref(prefs);
-            }
-        }
-    }
-
     public static void dumpTimersFromSharedPrefs(
             SharedPreferences prefs) {
         Object[] timerStrings =
@@ -17,7 +17,6 @@
 package com.android.deskclock.timer;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 
 import android.app.AlarmManager;
 import android.app.Notification;
@@ -30,6 +29,7 @@ import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
+import com.android.deskclock.AlertPlayers;
 import com.android.deskclock.DeskClock;
 import com.android.deskclock.R;
 import com.android.deskclock.TimerRingService;
@@ -42,10 +42,28 @@ public class TimerReceiver extends BroadcastReceiver {
     // Must also be different than StopwatchService.NOTIFICATION_ID
     private static final int IN_USE_NOTIFICATION_ID = Integer.MAX_VALUE - 2;
 
+    // Running timers that expire within this many milliseconds of the one
+    // the times up alarm was set for go off on the same wakeup.
+    private static final long TIMES_UP_WINDOW_MS = 500;
+
     ArrayList<TimerObj> mTimers;
 
     @Override
     public void onReceive(final Context context, final Intent intent) {
+        final PendingResult result = goAsync();
+        handleIntent(context, intent);
+        // The timers changed above are written in the background, wait for
+        // them before letting the process go.
+        TimerStore.getInstance(context).runAfterWrites(new Runnable() {
+            @Override
+            public void run() {
+                result.finish();
+            }
+        });
+    }
+
+    private void handleIntent(final Context context, final Intent intent) {
+        final long receivedAt = Utils.getTimeNow();
         int timer;
         String actionType = intent.getAction();
 
@@ -54,7 +72,8 @@ public class TimerReceiver extends BroadcastReceiver {
             mTimers = new ArrayList<TimerObj> ();
         }
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        TimerObj.getTimersFromSharedPrefs(prefs, mTimers);
+        final TimerStore store = TimerStore.getInstance(context);
+        store.getTimers(mTimers);
 
 
         if (intent.hasExtra(Timers.TIMER_INTENT_EXTRA)) {
@@ -84,7 +103,7 @@ public class TimerReceiver extends BroadcastReceiver {
                     return;
                 }
                 t.mState = TimerObj.STATE_DONE;
-                t.writeToSharedPref(prefs);
+                store.putTimer(t);
                 SharedPreferences.Editor editor = prefs.edit();
                 editor.putBoolean(Timers.FROM_NOTIFICATION, true);
                 editor.putLong(Timers.NOTIF_TIME, Utils.getTimeNow());
@@ -102,22 +121,32 @@ public class TimerReceiver extends BroadcastReceiver {
         }
 
         if (Timers.TIMES_UP.equals(actionType)) {
-            // Find the timer (if it doesn't exists, it was probably deleted).
-            if (t == null) {
-                Log.d(TAG, " timer not found in list - do nothing");
+            // Every running timer expiring in this window goes off now. If
+            // there is none, the timer was probably deleted or changed and
+            // only the next times up alarm needs to be set.
+            final ArrayList<TimerObj> expired = new ArrayList<TimerObj>();
+            store.getRunningTimersExpiringBy(Utils.getTimeNow() + TIMES_UP_WINDOW_MS, expired);
+            if (expired.isEmpty()) {
+                Log.d(TAG, " no running timer expired - do nothing");
+                updateNextTimesup(context);
                 return;
             }
 
-            t.mState = TimerObj.STATE_TIMESUP;
-            t.writeToSharedPref(prefs);
+            for (int i = 0; i < expired.size(); i++) {
+                expired.get(i).mState = TimerObj.STATE_TIMESUP;
+            }
+            store.putTimers(expired);
+            mTimers.clear();
+            store.getTimers(mTimers);
             // Play ringtone by using TimerRingService service with a default alarm.
             Log.d(TAG, "playing ringtone");
             Intent si = new Intent();
             si.setClass(context, TimerRingService.class);
+            si.putExtra(AlertPlayers.EXTRA_FIRED_AT, receivedAt);
             context.startService(si);
 
             // Update the in-use notification
-            if (getNextRunningTimer(mTimers, false, Utils.getTimeNow()) == null) {
+            if (store.getNextRunningTimer() == null) {
                 // Found no running timers.
                 cancelInUseNotification(context);
             } else {
@@ -140,7 +169,7 @@ public class TimerReceiver extends BroadcastReceiver {
     }
 
     private void stopRingtoneIfNoTimesup(final Context context) {
-        if (Timers.findExpiredTimer(mTimers) == null) {
+        if (!TimerStore.getInstance(context).hasTimesUpTimers()) {
             // Stop ringtone
             Log.d(TAG, "stopping ringtone");
             Intent si = new Intent();
@@ -149,11 +178,11 @@ public class TimerReceiver extends BroadcastReceiver {
         }
     }
 
-    // Scan all timers and find the one that will expire next.
+    // Find the running timer that will expire next.
     // Tell AlarmManager to send a "Time's up" message to this receiver when this timer expires.
     // If no timer exists, clear "time's up" message.
     private void updateNextTimesup(Context context) {
-        TimerObj t = getNextRunningTimer(mTimers, false, Utils.getTimeNow());
+        TimerObj t = TimerStore.getInstance(context).getNextRunningTimer();
         long nextTimesup = (t == null) ? -1 : t.getTimesupTime();
         int timerId = (t == null) ? -1 : t.mTimerId;
 
@@ -168,10 +197,13 @@ public class TimerReceiver extends BroadcastReceiver {
                 0, intent, PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_UPDATE_CURRENT);
         if (t != null) {
             mngr.set(AlarmManager.ELAPSED_REALTIME_WAKEUP, nextTimesup, p);
+            AlertPlayers.schedulePrepare(context, AlertPlayers.SLOT_TIMER,
+                    AlertPlayers.TIMER_SOURCE, AlarmManager.ELAPSED_REALTIME_WAKEUP, nextTimesup);
             Log.d(TAG,"Setting times up to " + nextTimesup);
         } else {
             Log.d(TAG,"canceling times up");
             mngr.cancel(p);
+            AlertPlayers.cancelPrepare(context, AlertPlayers.SLOT_TIMER);
         }
     }
 
@@ -199,7 +231,8 @@ public class TimerReceiver extends BroadcastReceiver {
                 nextBroadcastTime = getBroadcastTime(now, timeLeft);
             }
         } else {
-            TimerObj timer = getNextRunningTimer(timersInUse, false, now);
+            final TimerStore store = TimerStore.getInstance(context);
+            TimerObj timer = store.getNextRunningTimer();
             if (timer == null) {
                 // No running timers.
                 title = String.format(
@@ -214,7 +247,7 @@ public class TimerReceiver extends BroadcastReceiver {
                 contentText = String.format(context.getString(R.string.next_timer_notif),
                         buildTimeRemaining(context, timeLeft));
                 if (timeLeft <= 60) {
-                    TimerObj timerWithUpdate = getNextRunningTimer(timersInUse, true, now);
+                    TimerObj timerWithUpdate = store.getNextRunningTimerAfter(now + 60);
                     if (timerWithUpdate != null) {
                         completionTime = timerWithUpdate.getTimesupTime();
                         timeLeft = completionTime - now;
@@ -324,31 +357,6 @@ public class TimerReceiver extends BroadcastReceiver {
         return String.format(formats[index], hourSeq, minSeq);
     }
 
-    private TimerObj getNextRunningTimer(
-            ArrayList<TimerObj> timers, boolean requireNextUpdate, long now) {
-        long nextTimesup = Long.MAX_VALUE;
-        boolean nextTimerFound = false;
-        Iterator<TimerObj> i = timers.iterator();
-        TimerObj t = null;
-        while(i.hasNext()) {
-            TimerObj tmp = i.next();
-            if (tmp.mState == TimerObj.STATE_RUNNING) {
-                long timesupTime = tmp.getTimesupTime();
-                long timeLeft = timesupTime - now;
-                if (timesupTime < nextTimesup && (!requireNextUpdate || timeLeft > 60) ) {
-                    nextTimesup = timesupTime;
-                    nextTimerFound = true;
-                    t = tmp;
-                }
-            }
-        }
-        if (nextTimerFound) {
-            return t;
-        } else {
-            return null;
-        }
-    }
-
     private void cancelInUseNotification(final Context context) {
         NotificationManager notificationManager =
                 (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock.timer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+/**
+ * Process-wide store of all timers, shared by TimerReceiver and TimerFragment.
+ *
+ * Timers are kept in a SQLite table with one row per timer and cached in
+ * memory, so readers get copies of the cached timers without parsing
+ * anything. Only the rows of timers that actually changed are written, on a
+ * background thread; receivers must use runAfterWrites() to stay alive until
+ * their changes are on disk. Running timers are also kept in a heap ordered by their
+ * times up time, so the next timer to expire is found without a scan.
+ */
+public final class TimerStore {
+
+    private static final String TAG = "TimerStore";
+
+    private static final String DATABASE_NAME = "timers.db";
+    private static final int DATABASE_VERSION = 1;
+    private static final String TABLE = "timers";
+
+    private static final String COLUMN_ID = "_id";
+    private static final String COLUMN_START_TIME = "start_time";
+    private static final String COLUMN_TIME_LEFT = "time_left";
+    private static final String COLUMN_ORIGINAL_LENGTH = "original_length";
+    private static final String COLUMN_SETUP_LENGTH = "setup_length";
+    private static final String COLUMN_STATE = "state";
+    private static final String COLUMN_LABEL = "label";
+
+    private static final String[] QUERY_COLUMNS = {
+        COLUMN_ID, COLUMN_START_TIME, COLUMN_TIME_LEFT, COLUMN_ORIGINAL_LENGTH,
+        COLUMN_SETUP_LENGTH, COLUMN_STATE, COLUMN_LABEL };
+
+    private static final Comparator<TimerObj> NEWEST_FIRST = new Comparator<TimerObj>() {
+        @Override
+        public int compare(TimerObj timerObj1, TimerObj timerObj2) {
+            return timerObj2.mTimerId - timerObj1.mTimerId;
+        }
+    };
+
+    private static TimerStore sInstance;
+
+    private final Context mContext;
+    private final DatabaseHelper mOpenHelper;
+    private final Handler mWriteHandler;
+    // Cached copy of every stored timer, keyed by timer id.
+    private final HashMap<Integer, TimerObj> mTimers = new HashMap<Integer, TimerObj>();
+    // The cached timers that are running.
+    private final TimerHeap mRunningTimers = new TimerHeap();
+    private int mTimesUpCount;
+    private boolean mLoaded;
+
+    private static class DatabaseHelper extends SQLiteOpenHelper {
+        DatabaseHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE + " (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY," +
+                    COLUMN_START_TIME + " INTEGER, " +
+                    COLUMN_TIME_LEFT + " INTEGER, " +
+                    COLUMN_ORIGINAL_LENGTH + " INTEGER, " +
+                    COLUMN_SETUP_LENGTH + " INTEGER, " +
+                    COLUMN_STATE + " INTEGER, " +
+                    COLUMN_LABEL + " TEXT);");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int currentVersion) {
+        }
+    }
+
+    private TimerStore(Context context) {
+        mContext = context.getApplicationContext();
+        mOpenHelper = new DatabaseHelper(mContext);
+        final HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        mWriteHandler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized TimerStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TimerStore(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Adds a copy of every timer to timers, newest first.
+     */
+    public synchronized void getTimers(ArrayList<TimerObj> timers) {
+        ensureLoaded();
+        final int start = timers.size();
+        for (TimerObj t : mTimers.values()) {
+            timers.add(new TimerObj(t));
+        }
+        Collections.sort(timers.subList(start, timers.size()), NEWEST_FIRST);
+    }
+
+    /**
+     * Adds a copy of every timer in the given state to timers.
+     */
+    public synchronized void getTimers(ArrayList<TimerObj> timers, int state) {
+        ensureLoaded();
+        for (TimerObj t : mTimers.values()) {
+            if (t.mState == state) {
+                timers.add(new TimerObj(t));
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the running timer that expires first, or null if no
+     * timer is running.
+     */
+    public synchronized TimerObj getNextRunningTimer() {
+        ensureLoaded();
+        final TimerObj t = mRunningTimers.peek();
+        return t == null ? null : new TimerObj(t);
+    }
+
+    /**
+     * Returns a copy of the running timer that expires first after time, or
+     * null if there is none.
+     */
+    public synchronized TimerObj getNextRunningTimerAfter(long time) {
+        ensureLoaded();
+        final TimerObj t = mRunningTimers.getFirstExpiringAfter(time);
+        return t == null ? null : new TimerObj(t);
+    }
+
+    /**
+     * Adds a copy of every running timer that expires at or before time to
+     * timers.
+     */
+    public synchronized void getRunningTimersExpiringBy(long time, ArrayList<TimerObj> timers) {
+        ensureLoaded();
+        final int start = timers.size();
+        mRunningTimers.getExpiringBy(time, timers);
+        for (int i = start; i < timers.size(); i++) {
+            timers.set(i, new TimerObj(timers.get(i)));
+        }
+    }
+
+    /**
+     * Returns true if any timer is in the times up state.
+     */
+    public synchronized boolean hasTimesUpTimers() {
+        ensureLoaded();
+        return mTimesUpCount > 0;
+    }
+
+    /**
+     * Saves the timer. Nothing is written if it did not change since it was
+     * last saved.
+     */
+    public synchronized void putTimer(TimerObj timer) {
+        ensureLoaded();
+        final TimerObj cached = mTimers.get(timer.mTimerId);
+        if (cached != null && cached.contentEquals(timer)) {
+            return;
+        }
+        final TimerObj copy = new TimerObj(timer);
+        updateIndex(mTimers.put(copy.mTimerId, copy), copy);
+        final ContentValues values = createContentValues(copy);
+        mWriteHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mOpenHelper.getWritableDatabase().replace(TABLE, null, values);
+            }
+        });
+    }
+
+    public synchronized void putTimers(ArrayList<TimerObj> timers) {
+        for (int i = 0; i < timers.size(); i++) {
+            putTimer(timers.get(i));
+        }
+    }
+
+    public synchronized void deleteTimer(final int timerId) {
+        ensureLoaded();
+        final TimerObj old = mTimers.remove(timerId);
+        if (old == null) {
+            return;
+        }
+        updateIndex(old, null);
+        mWriteHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mOpenHelper.getWritableDatabase().delete(TABLE, COLUMN_ID + "=" + timerId, null);
+            }
+        });
+    }
+
+    public synchronized void deleteAllTimers() {
+        mTimers.clear();
+        mRunningTimers.clear();
+        mTimesUpCount = 0;
+        mLoaded = true;
+        mWriteHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mOpenHelper.getWritableDatabase().delete(TABLE, null, null);
+            }
+        });
+        // Timers saved by older versions are not needed either.
+        TimerObj.cleanTimersFromSharedPrefs(
+                PreferenceManager.getDefaultSharedPreferences(mContext));
+    }
+
+    /**
+     * Runs r on the write thread once every change saved so far is written.
+     * Receivers that change timers finish their PendingResult from here, so
+     * the process isn't killed before the change is on disk.
+     */
+    public void runAfterWrites(Runnable r) {
+        mWriteHandler.post(r);
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final Cursor cursor = db.query(TABLE, QUERY_COLUMNS, null, null, null, null, null);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    final TimerObj t = new TimerObj();
+                    t.mTimerId = cursor.getInt(0);
+                    t.mStartTime = cursor.getLong(1);
+                    t.mTimeLeft = cursor.getLong(2);
+                    t.mOriginalLength = cursor.getLong(3);
+                    t.mSetupLength = cursor.getLong(4);
+                    t.mState = cursor.getInt(5);
+                    t.mLabel = cursor.getString(6);
+                    updateIndex(mTimers.put(t.mTimerId, t), t);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        migrateSharedPrefs(db);
+        mLoaded = true;
+    }
+
+    // Moves timers saved in the shared preferences by older versions into
+    // the database.
+    private void migrateSharedPrefs(SQLiteDatabase db) {
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        final ArrayList<TimerObj> timers = new ArrayList<TimerObj>();
+        TimerObj.getTimersFromSharedPrefs(prefs, timers);
+        if (timers.isEmpty()) {
+            return;
+        }
+        Log.v(TAG, "Moving " + timers.size() + " timers out of shared prefs");
+        db.beginTransaction();
+        try {
+            for (TimerObj t : timers) {
+                db.replace(TABLE, null, createContentValues(t));
+                updateIndex(mTimers.put(t.mTimerId, t), t);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        TimerObj.cleanTimersFromSharedPrefs(prefs);
+    }
+
+    // Replaces oldTimer with newTimer in the running heap and the times up
+    // count. Either may be null.
+    private void updateIndex(TimerObj oldTimer, TimerObj newTimer) {
+        if (oldTimer != null && oldTimer.mState == TimerObj.STATE_TIMESUP) {
+            mTimesUpCount--;
+        }
+        if (newTimer != null && newTimer.mState == TimerObj.STATE_TIMESUP) {
+            mTimesUpCount++;
+        }
+        if (newTimer != null && newTimer.mState == TimerObj.STATE_RUNNING) {
+            mRunningTimers.put(newTimer);
+        } else if (oldTimer != null) {
+            mRunningTimers.remove(oldTimer.mTimerId);
+        }
+    }
+
+    private static ContentValues createContentValues(TimerObj t) {
+        final ContentValues values = new ContentValues(QUERY_COLUMNS.length);
+        values.put(COLUMN_ID, t.mTimerId);
+        values.put(COLUMN_START_TIME, t.mStartTime);
+        values.put(COLUMN_TIME_LEFT, t.mTimeLeft);
+        values.put(COLUMN_ORIGINAL_LENGTH, t.mOriginalLength);
+        values.put(COLUMN_SETUP_LENGTH, t.mSetupLength);
+        values.put(COLUMN_STATE, t.mState);
+        values.put(COLUMN_LABEL, t.mLabel);
+        return values;
+    }
+}
@@ -54,16 +54,6 @@ public class Timers {
         }
         return null;
     }
-    public static TimerObj findExpiredTimer(ArrayList<TimerObj> timers) {
-        Iterator<TimerObj> i = timers.iterator();
-        while(i.hasNext()) {
-            TimerObj t = i.next();
-            if (t.mState == TimerObj.STATE_TIMESUP) {
-                return t;
-            }
-        }
-        return null;
-    }
 
     public static ArrayList<TimerObj> timersInUse(ArrayList<TimerObj> timers) {
         ArrayList<TimerObj> result = (ArrayList<TimerObj>) timers.clone();
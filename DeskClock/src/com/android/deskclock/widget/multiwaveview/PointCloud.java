@@ -16,8 +16,6 @@
 
 package com.android.deskclock.widget.multiwaveview;
 
-import java.util.ArrayList;
-
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -30,13 +28,36 @@ public class PointCloud {
     private static final float MAX_POINT_SIZE = 4.0f;
     private static final int INNER_POINTS = 8;
     private static final String TAG = "PointCloud";
-    private ArrayList<Point> mPointCloud = new ArrayList<Point>();
+    // Sizes of the falloff curve tables, see makeFalloffTable().
+    private static final int GLOW_TABLE_SIZE = 256;
+    private static final int WAVE_TABLE_SIZE = 1024;
+    // Period of the wave falloff curve, as a fraction of the wave width.
+    private static final float WAVE_PERIOD = 4.0f;
+    private static final float PI = (float) Math.PI;
+
+    // max(0, cos(PI/4 * t))^10 for t in [0, 1], the glow falloff at t times the glow radius.
+    private static final float[] sGlowFalloff = makeFalloffTable(GLOW_TABLE_SIZE, 1.0f, 10.0f);
+    // cos(PI/4 * t)^20 for t in [0, WAVE_PERIOD], the wave falloff at -t times the wave width.
+    private static final float[] sWaveFalloff =
+            makeFalloffTable(WAVE_TABLE_SIZE, WAVE_PERIOD, 20.0f);
+
+    // The points, band by band from the inside out. Each band is a circle of points with the
+    // same distance from the center and the same size.
+    private float[] mPointX = new float[0];
+    private float[] mPointY = new float[0];
+    private int mPointCount;
+    private int mBandCount;
+    // First point of each band, plus the point count at the end.
+    private int[] mBandStart = new int[1];
+    private float[] mBandRadius = new float[0];
+    private float[] mBandPointSize = new float[0];
+    // Positions of the points being drawn together, as x, y pairs.
+    private float[] mBatch = new float[0];
     private Drawable mDrawable;
     private float mCenterX;
     private float mCenterY;
     private Paint mPaint;
     private float mScale = 1.0f;
-    private static final float PI = (float) Math.PI;
 
     // These allow us to have multiple concurrent animations.
     WaveManager waveManager = new WaveManager();
@@ -103,24 +124,14 @@ public class PointCloud {
         }
     }
 
-    class Point {
-        float x;
-        float y;
-        float radius;
-
-        public Point(float x2, float y2, float r) {
-            x = (float) x2;
-            y = (float) y2;
-            radius = r;
-        }
-    }
-
     public PointCloud(Drawable drawable) {
         mPaint = new Paint();
         mPaint.setFilterBitmap(true);
         mPaint.setColor(Color.rgb(255, 255, 255)); // TODO: make configurable
         mPaint.setAntiAlias(true);
         mPaint.setDither(true);
+        // Points are drawn as round dots with a stroke as wide as their diameter.
+        mPaint.setStrokeCap(Paint.Cap.ROUND);
 
         mDrawable = drawable;
         if (mDrawable != null) {
@@ -139,24 +150,52 @@ public class PointCloud {
             return;
         }
         mOuterRadius = outerRadius;
-        mPointCloud.clear();
         final float pointAreaRadius =  (outerRadius - innerRadius);
         final float ds = (2.0f * PI * innerRadius / INNER_POINTS);
         final int bands = (int) Math.round(pointAreaRadius / ds);
         final float dr = pointAreaRadius / bands;
+
+        // Count the points first so they fit in arrays.
+        int count = 0;
         float r = innerRadius;
+        for (int b = 0; b <= bands; b++, r += dr) {
+            count += (int) (2.0f * PI * r / ds);
+        }
+        mPointX = new float[count];
+        mPointY = new float[count];
+        mPointCount = count;
+        mBandCount = bands + 1;
+        mBandStart = new int[mBandCount + 1];
+        mBandRadius = new float[mBandCount];
+        mBandPointSize = new float[mBandCount];
+
+        int point = 0;
+        r = innerRadius;
         for (int b = 0; b <= bands; b++, r += dr) {
             float circumference = 2.0f * PI * r;
             final int pointsInBand = (int) (circumference / ds);
+            mBandStart[b] = point;
+            mBandRadius[b] = r;
+            mBandPointSize[b] = interp(MAX_POINT_SIZE, MIN_POINT_SIZE, r / outerRadius);
             float eta = PI/2.0f;
             float dEta = 2.0f * PI / pointsInBand;
             for (int i = 0; i < pointsInBand; i++) {
-                float x = r * FloatMath.cos(eta);
-                float y = r * FloatMath.sin(eta);
+                mPointX[point] = r * FloatMath.cos(eta);
+                mPointY[point] = r * FloatMath.sin(eta);
+                point++;
                 eta += dEta;
-                mPointCloud.add(new Point(x, y, r));
             }
         }
+        mBandStart[mBandCount] = point;
+        mBatch = new float[2 * (mBandCount > 0 ? maxBandSize() : 0)];
+    }
+
+    private int maxBandSize() {
+        int max = 0;
+        for (int b = 0; b < mBandCount; b++) {
+            max = Math.max(max, mBandStart[b + 1] - mBandStart[b]);
+        }
+        return max;
     }
 
     public void setScale(float scale) {
@@ -167,33 +206,53 @@ public class PointCloud {
         return mScale;
     }
 
-    private static float hypot(float x, float y) {
-        return FloatMath.sqrt(x*x + y*y);
-    }
-
     private static float max(float a, float b) {
         return a > b ? a : b;
     }
 
-    public int getAlphaForPoint(Point point) {
-        // Contribution from positional glow
-        float glowDistance = hypot(glowManager.x - point.x, glowManager.y - point.y);
-        float glowAlpha = 0.0f;
+    // Returns size + 1 samples of (cos(PI/4 * t))^power for t from 0 to range, clamped at 0
+    // when power is odd, as Math.pow would give.
+    private static float[] makeFalloffTable(int size, float range, float power) {
+        final float[] table = new float[size + 1];
+        for (int i = 0; i <= size; i++) {
+            final float cosf = FloatMath.cos(PI * 0.25f * range * i / size);
+            table[i] = max(0.0f, (float) Math.pow(cosf, power));
+        }
+        return table;
+    }
 
-        if (glowDistance < glowManager.radius) {
-            float cosf = FloatMath.cos(PI * 0.25f * glowDistance / glowManager.radius);
-            glowAlpha = glowManager.alpha * max(0.0f, (float) Math.pow(cosf, 10.0f));
+    // Looks up the table at t in [0, 1], interpolating between samples.
+    private static float lookUp(float[] table, float t) {
+        final float position = t * (table.length - 1);
+        final int i = (int) position;
+        if (i >= table.length - 1) {
+            return table[table.length - 1];
         }
+        return table[i] + (table[i + 1] - table[i]) * (position - i);
+    }
 
+    // Returns the alpha of the points of a band from the wave alone.
+    private float getWaveAlpha(float bandRadius) {
         // Compute contribution from Wave
-        float radius = hypot(point.x, point.y);
-        float distanceToWaveRing = (radius - waveManager.radius);
-        float waveAlpha = 0.0f;
+        float distanceToWaveRing = (bandRadius - waveManager.radius);
         if (distanceToWaveRing < waveManager.width * 0.5f && distanceToWaveRing < 0.0f) {
-            float cosf = FloatMath.cos(PI * 0.25f * distanceToWaveRing / waveManager.width);
-            waveAlpha = waveManager.alpha * max(0.0f, (float) Math.pow(cosf, 20.0f));
+            float t = (-distanceToWaveRing / waveManager.width) % WAVE_PERIOD;
+            return waveManager.alpha * lookUp(sWaveFalloff, t / WAVE_PERIOD);
         }
+        return 0.0f;
+    }
 
+    private int getAlphaForPoint(int point, float waveAlpha) {
+        // Contribution from positional glow
+        float glowAlpha = 0.0f;
+        final float dx = glowManager.x - mPointX[point];
+        final float dy = glowManager.y - mPointY[point];
+        final float glowDistanceSquared = dx * dx + dy * dy;
+        if (glowDistanceSquared < glowManager.radius * glowManager.radius) {
+            final float glowDistance = FloatMath.sqrt(glowDistanceSquared);
+            glowAlpha = glowManager.alpha
+                    * lookUp(sGlowFalloff, glowDistance / glowManager.radius);
+        }
         return (int) (max(glowAlpha, waveAlpha) * 255);
     }
 
@@ -202,35 +261,59 @@ public class PointCloud {
     }
 
     public void draw(Canvas canvas) {
-        ArrayList<Point> points = mPointCloud;
         canvas.save(Canvas.MATRIX_SAVE_FLAG);
         canvas.scale(mScale, mScale, mCenterX, mCenterY);
-        for (int i = 0; i < points.size(); i++) {
-            Point point = points.get(i);
-            final float pointSize = interp(MAX_POINT_SIZE, MIN_POINT_SIZE,
-                    point.radius / mOuterRadius);
-            final float px = point.x + mCenterX;
-            final float py = point.y + mCenterY;
-            int alpha = getAlphaForPoint(point);
-
-            if (alpha == 0) continue;
-
+        final boolean glowing = glowManager.alpha > 0.0f && glowManager.radius > 0.0f;
+        for (int b = 0; b < mBandCount; b++) {
+            final float waveAlpha = getWaveAlpha(mBandRadius[b]);
+            if (!glowing && waveAlpha == 0.0f) {
+                continue;
+            }
+            final float pointSize = mBandPointSize[b];
+            final int end = mBandStart[b + 1];
             if (mDrawable != null) {
-                canvas.save(Canvas.MATRIX_SAVE_FLAG);
                 final float cx = mDrawable.getIntrinsicWidth() * 0.5f;
                 final float cy = mDrawable.getIntrinsicHeight() * 0.5f;
                 final float s = pointSize / MAX_POINT_SIZE;
-                canvas.scale(s, s, px, py);
-                canvas.translate(px - cx, py - cy);
-                mDrawable.setAlpha(alpha);
-                mDrawable.draw(canvas);
-                canvas.restore();
+                for (int i = mBandStart[b]; i < end; i++) {
+                    final int alpha = getAlphaForPoint(i, waveAlpha);
+                    if (alpha == 0) continue;
+                    final float px = mPointX[i] + mCenterX;
+                    final float py = mPointY[i] + mCenterY;
+                    canvas.save(Canvas.MATRIX_SAVE_FLAG);
+                    canvas.scale(s, s, px, py);
+                    canvas.translate(px - cx, py - cy);
+                    mDrawable.setAlpha(alpha);
+                    mDrawable.draw(canvas);
+                    canvas.restore();
+                }
             } else {
-                mPaint.setAlpha(alpha);
-                canvas.drawCircle(px, py, pointSize, mPaint);
+                // Points of a band next to each other with the same alpha are drawn at once.
+                mPaint.setStrokeWidth(2 * pointSize);
+                int batchAlpha = 0;
+                int batched = 0;
+                for (int i = mBandStart[b]; i < end; i++) {
+                    final int alpha = getAlphaForPoint(i, waveAlpha);
+                    if (alpha != batchAlpha) {
+                        drawBatch(canvas, batchAlpha, batched);
+                        batchAlpha = alpha;
+                        batched = 0;
+                    }
+                    if (alpha == 0) continue;
+                    mBatch[batched++] = mPointX[i] + mCenterX;
+                    mBatch[batched++] = mPointY[i] + mCenterY;
+                }
+                drawBatch(canvas, batchAlpha, batched);
             }
         }
         canvas.restore();
     }
 
+    private void drawBatch(Canvas canvas, int alpha, int batched) {
+        if (alpha != 0 && batched > 0) {
+            mPaint.setAlpha(alpha);
+            canvas.drawPoints(mBatch, 0, batched, mPaint);
+        }
+    }
+
 }
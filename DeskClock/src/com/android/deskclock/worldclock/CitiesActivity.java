@@ -16,13 +16,8 @@
 
 package com.android.deskclock.worldclock;
 
-import java.text.Collator;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.TimeZone;
 
 import android.app.ActionBar;
 import android.app.Activity;
@@ -30,8 +25,9 @@ import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
+import android.os.AsyncTask;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
+import android.text.TextUtils;
 import android.text.format.DateFormat;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -43,12 +39,12 @@ import android.widget.CheckBox;
 import android.widget.CompoundButton;
 import android.widget.CompoundButton.OnCheckedChangeListener;
 import android.widget.ListView;
+import android.widget.SearchView;
 import android.widget.SectionIndexer;
 import android.widget.TextView;
 
 import com.android.deskclock.Alarms;
 import com.android.deskclock.DeskClock;
-import com.android.deskclock.Log;
 import com.android.deskclock.R;
 import com.android.deskclock.SettingsActivity;
 import com.android.deskclock.Utils;
@@ -66,29 +62,42 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
     private LayoutInflater mFactory;
     private ListView mCitiesList;
     private CityAdapter mAdapter;
-    private HashMap<String, CityObj> mUserSelectedCities;
+    // The search query typed while the city index is still loading.
+    private String mPendingFilter;
+    private SelectedCities mUserSelectedCities;
     private Calendar mCalendar;
-    private final Collator mCollator = Collator.getInstance();
 
 
 /***
 * Adapter for a list of cities with the respected time zone.
-* The Adapter sorts the list alphabetically and create an indexer.
+* The Adapter shows the cities of the CityIndex with a header per section, or
+* only the cities matching a name prefix while filtering.
 ***/
 
     private class CityAdapter extends BaseAdapter implements SectionIndexer {
-        private static final String DELETED_ENTRY = "C0";
-        private Object [] mAllTheCitiesList;                      // full list of the cities
-        private final HashMap<String, CityObj> mSelectedCitiesList; // Selected cities by the use
+        private final CityIndex mIndex;                            // full list of the cities
+        private final SelectedCities mSelectedCitiesList;          // Selected cities by the user
         private final LayoutInflater mInflater;
         private boolean mIs24HoursMode;                            // AM/PM or 24 hours mode
-        private Object [] mSectionHeaders;
-        private Object [] mSectionPositions;
+        private final Object [] mSectionHeaders;
+        // Position of each section header in the unfiltered list.
+        private final int [] mSectionPositions;
+        // Range of cities shown while filtering, -1 when not filtering.
+        private int mFilterStart = -1;
+        private int mFilterEnd = -1;
 
-        public CityAdapter(
-                Context context,  HashMap<String, CityObj> selectedList, LayoutInflater factory) {
+        public CityAdapter(Context context, CityIndex index,
+                SelectedCities selectedList, LayoutInflater factory) {
             super();
-            loadCitiesDataBase(context);
+            mIndex = index;
+            final int sections = mIndex.getSectionCount();
+            mSectionHeaders = new Object[sections];
+            mSectionPositions = new int[sections];
+            for (int i = 0; i < sections; i++) {
+                mSectionHeaders[i] = mIndex.getSectionLetter(i).toUpperCase();
+                // Each earlier section adds a header.
+                mSectionPositions[i] = mIndex.getSectionStart(i) + i;
+            }
             mSelectedCitiesList = selectedList;
             mInflater = factory;
             mCalendar = Calendar.getInstance();
@@ -96,15 +105,59 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
             set24HoursMode(context);
         }
 
+        /**
+         * Shows only the cities whose name starts with prefix, or all cities
+         * if prefix is empty.
+         */
+        public void setFilter(String prefix) {
+            if (TextUtils.isEmpty(prefix)) {
+                mFilterStart = mFilterEnd = -1;
+            } else {
+                mFilterStart = mIndex.getPrefixStart(prefix);
+                mFilterEnd = Math.max(mIndex.getPrefixEnd(prefix), mFilterStart);
+            }
+            notifyDataSetChanged();
+        }
+
+        private boolean isFiltered() {
+            return mFilterStart >= 0;
+        }
+
+        // Returns the section whose header is at position, or -1 if position
+        // is not a header. Only valid when not filtering.
+        private int getHeaderSection(int position) {
+            final int i = Arrays.binarySearch(mSectionPositions, position);
+            return i >= 0 ? i : -1;
+        }
+
+        // Returns the city shown at position, or -1 for a header.
+        private int getCityIndex(int position) {
+            if (isFiltered()) {
+                return mFilterStart + position;
+            }
+            if (getHeaderSection(position) >= 0) {
+                return -1;
+            }
+            return position - getSectionForPosition(position) - 1;
+        }
+
         @Override
         public int getCount() {
-            return mAllTheCitiesList.length;
+            if (isFiltered()) {
+                return mFilterEnd - mFilterStart;
+            }
+            return mIndex.getCityCount() + mSectionPositions.length;
         }
 
         @Override
         public Object getItem(int p) {
-            if (p >=0 && p < mAllTheCitiesList.length) {
-                return mAllTheCitiesList [p];
+            if (p >=0 && p < getCount()) {
+                final int city = getCityIndex(p);
+                if (city < 0) {
+                    return new CityObj(mIndex.getSectionLetter(getSectionForPosition(p)),
+                            null, null);
+                }
+                return mIndex.getCity(city);
             }
             return null;
         }
@@ -116,23 +169,24 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
 
         @Override
         public boolean isEnabled(int p) {
-            return ((CityObj)mAllTheCitiesList[p]).mCityId != null;
+            return getCityIndex(p) >= 0;
         }
 
         @Override
         public View getView(int position, View view, ViewGroup parent) {
-            if (position < 0 || position >=  mAllTheCitiesList.length) {
+            if (position < 0 || position >=  getCount()) {
                 return null;
             }
-            CityObj c = (CityObj)mAllTheCitiesList [position];
-            // Header view (A CityObj with nothing but the first letter as the name
-            if (c.mCityId == null) {
+            final int city = getCityIndex(position);
+            // Header view (the first letter of the section as the name)
+            if (city < 0) {
                 if (view == null || view.findViewById(R.id.header) == null) {
                     view =  mInflater.inflate(R.layout.city_list_header, parent, false);
                 }
                 TextView header = (TextView)view.findViewById(R.id.header);
-                header.setText(c.mCityName);
+                header.setText(mIndex.getSectionLetter(getSectionForPosition(position)));
             } else { // City view
+                CityObj c = mIndex.getCity(city);
                 // Make sure to recycle a City view only
                 if (view == null || view.findViewById(R.id.city_name) == null) {
                     view = mInflater.inflate(R.layout.city_list_item, parent, false);
@@ -142,9 +196,9 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
                 TextView tz = (TextView)view.findViewById(R.id.city_time);
                 CheckBox cb = (CheckBox)view.findViewById(R.id.city_onoff);
                 cb.setTag(c);
-                cb.setChecked(mSelectedCitiesList.containsKey(c.mCityId));
+                cb.setChecked(mSelectedCitiesList.contains(c.mCityId));
                 cb.setOnCheckedChangeListener(CitiesActivity.this);
-                mCalendar.setTimeZone(TimeZone.getTimeZone(c.mTimeZone));
+                mCalendar.setTimeZone(TimeZoneOffsets.getTimeZone(c.mTimeZone));
                 tz.setText(DateFormat.format(mIs24HoursMode ? "k:mm" : "h:mmaa", mCalendar));
                 name.setText(c.mCityName);
             }
@@ -156,71 +210,26 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
             notifyDataSetChanged();
         }
 
-        private void loadCitiesDataBase(Context c) {
-            Resources r = c.getResources();
-            // Read strings array of name,timezone, id
-            // make sure the list are the same length
-            String [] cities = r.getStringArray(R.array.cities_names);
-            String [] timezones = r.getStringArray(R.array.cities_tz);
-            String [] ids = r.getStringArray(R.array.cities_id);
-            if (cities.length != timezones.length || ids.length != cities.length) {
-                Log.wtf("City lists sizes are not the same, cannot use the data");
-                return;
-             }
-             CityObj[] tempList = new CityObj [cities.length];
-             for (int i = 0; i < cities.length; i++) {
-                tempList[i] = new CityObj(cities[i], timezones[i], ids[i]);
-             }
-             // Sort alphabetically
-            Arrays.sort(tempList, new Comparator<CityObj> () {
-                @Override
-                public int compare(CityObj c1, CityObj c2) {
-                    return mCollator.compare(c1.mCityName, c2.mCityName);
-                }
-            });
-            //Create section indexer and add headers to the cities list
-            String val = null;
-            ArrayList<String> sections = new ArrayList<String> ();
-            ArrayList<Integer> positions = new ArrayList<Integer> ();
-            ArrayList<CityObj> items = new ArrayList<CityObj>();
-            int count = 0;
-            for (int i = 0; i < tempList.length; i++) {
-                CityObj city = tempList[i];
-                if (city.mCityId.equals(DELETED_ENTRY)) {
-                    continue;
-                }
-                if (!city.mCityName.substring(0, 1).equals(val)) {
-                    val = city.mCityName.substring(0, 1);
-                    sections.add((new String(val)).toUpperCase());
-                    positions.add(count);
-                    // Add a header
-                    items.add(new CityObj(val, null, null));
-                    count++;
-                }
-                items.add(city);
-                count++;
-            }
-            mSectionHeaders = sections.toArray();
-            mSectionPositions = positions.toArray();
-            mAllTheCitiesList = items.toArray();
-         }
-
         @Override
         public int getPositionForSection(int section) {
-            return (Integer) mSectionPositions[section];
+            if (isFiltered()) {
+                // The first matching city in the section, if any.
+                final int city = Math.max(mIndex.getSectionStart(section), mFilterStart);
+                return Math.max(Math.min(city, mFilterEnd - 1) - mFilterStart, 0);
+            }
+            return mSectionPositions[section];
         }
 
         @Override
         public int getSectionForPosition(int p) {
-            for (int i = 0; i < mSectionPositions.length - 1; i++) {
-                if (p >= (Integer)mSectionPositions[i] && p < (Integer)mSectionPositions[i + 1]) {
-                    return i;
-                }
+            if (mSectionPositions.length == 0) {
+                return 0;
             }
-            if (p >= (Integer)mSectionPositions[mSectionPositions.length - 1]) {
-                return mSectionPositions.length - 1;
+            if (isFiltered()) {
+                return mIndex.getSectionForCity(mFilterStart + p);
             }
-            return 0;
+            final int i = Arrays.binarySearch(mSectionPositions, p);
+            return i >= 0 ? i : Math.max(-i - 2, 0);
         }
 
         @Override
@@ -243,16 +252,40 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
         mCitiesList.setFastScrollAlwaysVisible(true);
         mCitiesList.setScrollBarStyle(View.SCROLLBARS_INSIDE_INSET);
         mCitiesList.setFastScrollEnabled(true);
-        mUserSelectedCities = Cities.readCitiesFromSharedPrefs(
-                PreferenceManager.getDefaultSharedPreferences(this));
-        mAdapter = new CityAdapter(this, mUserSelectedCities, mFactory);
-        mCitiesList.setAdapter(mAdapter);
+        mUserSelectedCities = SelectedCities.getInstance(this);
+        loadCities();
         ActionBar actionBar = getActionBar();
         if (actionBar != null) {
             actionBar.setDisplayOptions(ActionBar.DISPLAY_HOME_AS_UP, ActionBar.DISPLAY_HOME_AS_UP);
         }
     }
 
+    // Getting the city index may build it, which takes a while, so the list
+    // is only filled in once it is loaded.
+    private void loadCities() {
+        final Context context = getApplicationContext();
+        new AsyncTask<Void, Void, CityIndex>() {
+            @Override
+            protected CityIndex doInBackground(Void... params) {
+                return CityIndex.getInstance(context);
+            }
+
+            @Override
+            protected void onPostExecute(CityIndex index) {
+                if (isFinishing()) {
+                    return;
+                }
+                mAdapter = new CityAdapter(CitiesActivity.this, index, mUserSelectedCities,
+                        mFactory);
+                if (mPendingFilter != null) {
+                    mAdapter.setFilter(mPendingFilter);
+                    mPendingFilter = null;
+                }
+                mCitiesList.setAdapter(mAdapter);
+            }
+        }.execute();
+    }
+
     @Override
     public void onResume() {
         super.onResume();
@@ -265,8 +298,6 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
     @Override
     public void onPause() {
         super.onPause();
-        Cities.saveCitiesToSharedPrefs(PreferenceManager.getDefaultSharedPreferences(this),
-                mUserSelectedCities);
         Intent i = new Intent(Cities.WORLDCLOCK_UPDATE_INTENT);
         sendBroadcast(i);
     }
@@ -301,6 +332,26 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.cities_menu, menu);
+        MenuItem search = menu.findItem(R.id.menu_item_search);
+        if (search != null) {
+            SearchView searchView = (SearchView) search.getActionView();
+            searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+                @Override
+                public boolean onQueryTextSubmit(String query) {
+                    return true;
+                }
+
+                @Override
+                public boolean onQueryTextChange(String newText) {
+                    if (mAdapter != null) {
+                        mAdapter.setFilter(newText);
+                    } else {
+                        mPendingFilter = newText;
+                    }
+                    return true;
+                }
+            });
+        }
         MenuItem help = menu.findItem(R.id.menu_item_help);
         if (help != null) {
             Utils.prepareHelpMenuItem(this, help);
@@ -312,7 +363,7 @@ public class CitiesActivity extends Activity implements OnCheckedChangeListener,
     public void onCheckedChanged(CompoundButton b, boolean checked) {
         CityObj c = (CityObj)b.getTag();
         if (checked) {
-            mUserSelectedCities.put(c.mCityId, c);
+            mUserSelectedCities.add(c);
         } else {
             mUserSelectedCities.remove(c.mCityId);
         }
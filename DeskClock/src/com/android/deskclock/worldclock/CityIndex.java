@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock.worldclock;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.os.Build;
+
+import com.android.deskclock.Log;
+import com.android.deskclock.R;
+
+/**
+ * The list of all cities offered by the world clock, sorted by name and
+ * split in sections by first letter.
+ *
+ * Building it means reading the city resources and sorting them with a
+ * collator, so the result is saved to a binary file in the cache directory
+ * and read back while the app version, the system build and the locale stay
+ * the same. Each city also has a primary strength collation key, which allows
+ * prefix searches with a binary search over the sorted list. Collation keys
+ * change with the collator of the system, hence the system build. Getting
+ * the index may build it, so must not be done on the main thread.
+ */
+final class CityIndex {
+
+    private static final String FILE_NAME = "cities.idx";
+    private static final int MAGIC = 0x43495458;
+    // Bump when the file format changes.
+    private static final int FORMAT_VERSION = 1;
+    private static final String DELETED_ENTRY = "C0";
+
+    private static CityIndex sInstance;
+    // The app version and system build part of the signature, which can't
+    // change while the process runs.
+    private static String sPackageSignature;
+
+    private final String[] mNames;
+    private final String[] mTimeZones;
+    private final String[] mIds;
+    private final byte[][] mKeys;
+    // First letter of the cities in each section, and the first city of each.
+    private final String[] mSectionLetters;
+    private final int[] mSectionStarts;
+    // Created on demand.
+    private final CityObj[] mCities;
+    // Locale, app version and system build the index was built for.
+    private String mSignature;
+
+    private CityIndex(String[] names, String[] timeZones, String[] ids, byte[][] keys,
+            String[] sectionLetters, int[] sectionStarts) {
+        mNames = names;
+        mTimeZones = timeZones;
+        mIds = ids;
+        mKeys = keys;
+        mSectionLetters = sectionLetters;
+        mSectionStarts = sectionStarts;
+        mCities = new CityObj[names.length];
+    }
+
+    static synchronized CityIndex getInstance(Context context) {
+        final String signature = getSignature(context);
+        if (sInstance == null || !signature.equals(sInstance.mSignature)) {
+            final File file = new File(context.getCacheDir(), FILE_NAME);
+            CityIndex index = read(file, signature);
+            if (index == null) {
+                index = build(context.getResources());
+                index.write(file, signature);
+            }
+            index.mSignature = signature;
+            sInstance = index;
+        }
+        return sInstance;
+    }
+
+    int getCityCount() {
+        return mNames.length;
+    }
+
+    CityObj getCity(int city) {
+        if (mCities[city] == null) {
+            mCities[city] = new CityObj(mNames[city], mTimeZones[city], mIds[city]);
+        }
+        return mCities[city];
+    }
+
+    int getSectionCount() {
+        return mSectionStarts.length;
+    }
+
+    String getSectionLetter(int section) {
+        return mSectionLetters[section];
+    }
+
+    int getSectionStart(int section) {
+        return mSectionStarts[section];
+    }
+
+    /**
+     * Returns the section holding the given city.
+     */
+    int getSectionForCity(int city) {
+        final int i = Arrays.binarySearch(mSectionStarts, city);
+        return i >= 0 ? i : Math.max(-i - 2, 0);
+    }
+
+    /**
+     * Returns the first city whose name starts with prefix, ignoring case and
+     * accents, or the city it would be inserted before. The cities matching
+     * are the ones from there up to getPrefixEnd(prefix).
+     */
+    int getPrefixStart(String prefix) {
+        final byte[] key = getPrimaryKey(Collator.getInstance(), prefix);
+        int low = 0;
+        int high = mKeys.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compareToPrefix(mKeys[mid], key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the city after the last city whose name starts with prefix.
+     */
+    int getPrefixEnd(String prefix) {
+        final byte[] key = getPrimaryKey(Collator.getInstance(), prefix);
+        int low = 0;
+        int high = mKeys.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (compareToPrefix(mKeys[mid], key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Compares key with prefix, treating keys that start with prefix as equal.
+    private static int compareToPrefix(byte[] key, byte[] prefix) {
+        final int length = Math.min(key.length, prefix.length);
+        for (int i = 0; i < length; i++) {
+            final int diff = (key[i] & 0xff) - (prefix[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return key.length < prefix.length ? -1 : 0;
+    }
+
+    // Returns the primary weights of the string's collation key, without the
+    // level separators and terminator.
+    private static byte[] getPrimaryKey(Collator collator, String s) {
+        collator.setStrength(Collator.PRIMARY);
+        final byte[] key = collator.getCollationKey(s).toByteArray();
+        int length = 0;
+        while (length < key.length && (key[length] & 0xff) > 1) {
+            length++;
+        }
+        return length == key.length ? key : Arrays.copyOf(key, length);
+    }
+
+    private static String getSignature(Context context) {
+        if (sPackageSignature == null) {
+            long versionCode = 0;
+            long lastUpdateTime = 0;
+            try {
+                final PackageInfo info = context.getPackageManager().getPackageInfo(
+                        context.getPackageName(), 0);
+                versionCode = info.versionCode;
+                lastUpdateTime = info.lastUpdateTime;
+            } catch (PackageManager.NameNotFoundException e) {
+                // Can't happen for our own package, the locale still applies.
+            }
+            sPackageSignature = versionCode + "/" + lastUpdateTime + "/" + Build.FINGERPRINT;
+        }
+        return Locale.getDefault().toString() + '/' + sPackageSignature;
+    }
+
+    private static CityIndex build(Resources r) {
+        // Read strings array of name,timezone, id
+        // make sure the list are the same length
+        final String[] cities = r.getStringArray(R.array.cities_names);
+        final String[] timezones = r.getStringArray(R.array.cities_tz);
+        final String[] ids = r.getStringArray(R.array.cities_id);
+        if (cities.length != timezones.length || ids.length != cities.length) {
+            Log.wtf("City lists sizes are not the same, cannot use the data");
+            return new CityIndex(new String[0], new String[0], new String[0], new byte[0][],
+                    new String[0], new int[0]);
+        }
+        final Collator collator = Collator.getInstance();
+        final Integer[] order = new Integer[cities.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // Sort alphabetically
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer c1, Integer c2) {
+                return collator.compare(cities[c1], cities[c2]);
+            }
+        });
+
+        final Collator primary = Collator.getInstance();
+        final ArrayList<Integer> kept = new ArrayList<Integer>(order.length);
+        for (Integer i : order) {
+            if (!ids[i].equals(DELETED_ENTRY)) {
+                kept.add(i);
+            }
+        }
+        final int count = kept.size();
+        final String[] sortedNames = new String[count];
+        final String[] sortedTimeZones = new String[count];
+        final String[] sortedIds = new String[count];
+        final byte[][] keys = new byte[count][];
+        final ArrayList<String> letters = new ArrayList<String>();
+        final ArrayList<Integer> starts = new ArrayList<Integer>();
+        String letter = null;
+        for (int c = 0; c < count; c++) {
+            final int i = kept.get(c);
+            sortedNames[c] = cities[i];
+            sortedTimeZones[c] = timezones[i];
+            sortedIds[c] = ids[i];
+            keys[c] = getPrimaryKey(primary, cities[i]);
+            if (!cities[i].regionMatches(0, letter == null ? "" : letter, 0, 1)) {
+                letter = cities[i].substring(0, 1);
+                letters.add(letter);
+                starts.add(c);
+            }
+        }
+        final int[] sectionStarts = new int[starts.size()];
+        for (int s = 0; s < sectionStarts.length; s++) {
+            sectionStarts[s] = starts.get(s);
+        }
+        return new CityIndex(sortedNames, sortedTimeZones, sortedIds, keys,
+                letters.toArray(new String[letters.size()]), sectionStarts);
+    }
+
+    private static CityIndex read(File file, String signature) {
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !signature.equals(in.readUTF())) {
+                return null;
+            }
+            final int count = in.readInt();
+            final String[] names = new String[count];
+            final String[] timeZones = new String[count];
+            final String[] ids = new String[count];
+            final byte[][] keys = new byte[count][];
+            for (int c = 0; c < count; c++) {
+                names[c] = in.readUTF();
+                timeZones[c] = in.readUTF();
+                ids[c] = in.readUTF();
+                keys[c] = new byte[in.readUnsignedShort()];
+                in.readFully(keys[c]);
+            }
+            final int sections = in.readInt();
+            final String[] letters = new String[sections];
+            final int[] starts = new int[sections];
+            for (int s = 0; s < sections; s++) {
+                letters[s] = in.readUTF();
+                starts[s] = in.readInt();
+            }
+            return new CityIndex(names, timeZones, ids, keys, letters, starts);
+        } catch (IOException e) {
+            Log.w("Could not read the city index, rebuilding it: " + e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing to do.
+                }
+            }
+        }
+    }
+
+    private void write(File file, String signature) {
+        final File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(signature);
+            out.writeInt(mNames.length);
+            for (int c = 0; c < mNames.length; c++) {
+                out.writeUTF(mNames[c]);
+                out.writeUTF(mTimeZones[c]);
+                out.writeUTF(mIds[c]);
+                out.writeShort(mKeys[c].length);
+                out.write(mKeys[c]);
+            }
+            out.writeInt(mSectionStarts.length);
+            for (int s = 0; s < mSectionStarts.length; s++) {
+                out.writeUTF(mSectionLetters[s]);
+                out.writeInt(mSectionStarts[s]);
+            }
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            // The index is rebuilt next time.
+            Log.w("Could not save the city index: " + e);
+            temp.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing to do.
+                }
+            }
+        }
+    }
+}
@@ -56,4 +56,10 @@ public class CityObj {
         editor.putString (CITY_ID + index, mCityId);
     }
 
+    public static void removeCityFromSharedPrefs(SharedPreferences.Editor editor, int index) {
+        editor.remove(CITY_NAME + index);
+        editor.remove(CITY_TIME_ZONE + index);
+        editor.remove(CITY_ID + index);
+    }
+
 }
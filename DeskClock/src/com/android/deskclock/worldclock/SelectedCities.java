@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock.worldclock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * Process-wide store of the cities the user selected for the world clock,
+ * shared by the app and the widget.
+ *
+ * The cities are read from the shared preferences once. Selecting or
+ * unselecting a city only writes the keys of the slot it occupies, using the
+ * same indexed keys as Cities: a removed city's slot is filled with the last
+ * city. Readers get an array snapshot that is only rebuilt after a change, and
+ * can register to hear about changes.
+ */
+public final class SelectedCities {
+
+    public interface OnChangeListener {
+        /**
+         * Called on the thread that made the change.
+         */
+        void onSelectedCitiesChanged();
+    }
+
+    private static final CityObj[] EMPTY = new CityObj[0];
+
+    private static SelectedCities sInstance;
+
+    private final SharedPreferences mPrefs;
+    // The cities in the order of their slots in the shared preferences.
+    private final ArrayList<CityObj> mCities = new ArrayList<CityObj>();
+    // Slot of each city by id.
+    private final HashMap<String, Integer> mSlots = new HashMap<String, Integer>();
+    private final ArrayList<OnChangeListener> mListeners = new ArrayList<OnChangeListener>();
+    private CityObj[] mSnapshot;
+
+    private SelectedCities(Context context) {
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+        load();
+    }
+
+    public static synchronized SelectedCities getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SelectedCities(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the selected cities. The array and the cities are shared and
+     * must not be modified.
+     */
+    public synchronized CityObj[] getSnapshot() {
+        if (mSnapshot == null) {
+            mSnapshot = mCities.isEmpty() ? EMPTY : mCities.toArray(new CityObj[mCities.size()]);
+        }
+        return mSnapshot;
+    }
+
+    public synchronized boolean contains(String cityId) {
+        return mSlots.containsKey(cityId);
+    }
+
+    public void add(CityObj city) {
+        synchronized (this) {
+            if (mSlots.containsKey(city.mCityId)) {
+                return;
+            }
+            final int slot = mCities.size();
+            mCities.add(city);
+            mSlots.put(city.mCityId, slot);
+            final SharedPreferences.Editor editor = mPrefs.edit();
+            city.saveCityToSharedPrefs(editor, slot);
+            editor.putInt(Cities.NUMBER_OF_CITIES, mCities.size());
+            editor.apply();
+            mSnapshot = null;
+        }
+        notifyListeners();
+    }
+
+    public void remove(String cityId) {
+        synchronized (this) {
+            final Integer slot = mSlots.remove(cityId);
+            if (slot == null) {
+                return;
+            }
+            final int last = mCities.size() - 1;
+            final CityObj moved = mCities.remove(last);
+            final SharedPreferences.Editor editor = mPrefs.edit();
+            if (slot != last) {
+                mCities.set(slot, moved);
+                mSlots.put(moved.mCityId, slot);
+                moved.saveCityToSharedPrefs(editor, slot);
+            }
+            CityObj.removeCityFromSharedPrefs(editor, last);
+            editor.putInt(Cities.NUMBER_OF_CITIES, mCities.size());
+            editor.apply();
+            mSnapshot = null;
+        }
+        notifyListeners();
+    }
+
+    public synchronized void registerListener(OnChangeListener listener) {
+        mListeners.add(listener);
+    }
+
+    public synchronized void unregisterListener(OnChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    private void notifyListeners() {
+        final OnChangeListener[] listeners;
+        synchronized (this) {
+            listeners = mListeners.toArray(new OnChangeListener[mListeners.size()]);
+        }
+        for (OnChangeListener l : listeners) {
+            l.onSelectedCitiesChanged();
+        }
+    }
+
+    private void load() {
+        final int size = mPrefs.getInt(Cities.NUMBER_OF_CITIES, -1);
+        boolean compact = true;
+        for (int i = 0; i < size; i++) {
+            final CityObj c = new CityObj(mPrefs, i);
+            if (c.mCityName != null && c.mTimeZone != null && !mSlots.containsKey(c.mCityId)) {
+                mSlots.put(c.mCityId, mCities.size());
+                mCities.add(c);
+            } else {
+                compact = false;
+            }
+        }
+        if (!compact) {
+            // Rewrite once so every slot holds a valid city.
+            final SharedPreferences.Editor editor = mPrefs.edit();
+            for (int i = 0; i < mCities.size(); i++) {
+                mCities.get(i).saveCityToSharedPrefs(editor, i);
+            }
+            for (int i = mCities.size(); i < size; i++) {
+                CityObj.removeCityFromSharedPrefs(editor, i);
+            }
+            editor.putInt(Cities.NUMBER_OF_CITIES, mCities.size());
+            editor.apply();
+        }
+    }
+}
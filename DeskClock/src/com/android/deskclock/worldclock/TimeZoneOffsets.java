@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock.worldclock;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.TimeZone;
+
+/**
+ * Process-wide cache of the current GMT offset of each time zone by id.
+ *
+ * Each offset is kept until the next DST transition of its zone, or a few
+ * weeks if there is none that soon, and is only recomputed once that passes
+ * or the wall clock moves outside the interval it was computed for. The
+ * cache should be cleared when the system time zone changes.
+ */
+public final class TimeZoneOffsets {
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+    // How far ahead to look for the next transition, in days.
+    private static final int SEARCH_DAYS = 28;
+
+    private static final class Entry {
+        final TimeZone zone;
+        int offset;
+        // The offset is valid for validFrom <= time < validUntil.
+        long validFrom;
+        long validUntil;
+
+        Entry(TimeZone zone) {
+            this.zone = zone;
+        }
+    }
+
+    private static final HashMap<String, Entry> sEntries = new HashMap<String, Entry>();
+
+    private TimeZoneOffsets() {}
+
+    /**
+     * Returns the offset from GMT in milliseconds of the zone at time,
+     * including DST.
+     */
+    public static synchronized int getOffset(String id, long time) {
+        final Entry entry = getEntry(id);
+        if (time < entry.validFrom || time >= entry.validUntil) {
+            computeOffset(entry, time);
+        }
+        return entry.offset;
+    }
+
+    /**
+     * Returns the zone with the given id. The instance is shared and must not
+     * be modified.
+     */
+    public static synchronized TimeZone getTimeZone(String id) {
+        return getEntry(id).zone;
+    }
+
+    /**
+     * Forgets all offsets. Called when the system time zone changes.
+     */
+    public static synchronized void clear() {
+        sEntries.clear();
+    }
+
+    /**
+     * Returns the Calendar day of week at time in a zone with the given
+     * offset.
+     */
+    public static int getDayOfWeek(long time, int offset) {
+        final long localTime = time + offset;
+        long day = localTime / DAY_MILLIS;
+        if (localTime < 0 && localTime % DAY_MILLIS != 0) {
+            day--;
+        }
+        // Day 0 of the epoch was a Thursday.
+        final int dayOfWeek = (int) ((day + Calendar.THURSDAY - Calendar.SUNDAY) % 7);
+        return (dayOfWeek < 0 ? dayOfWeek + 7 : dayOfWeek) + Calendar.SUNDAY;
+    }
+
+    private static Entry getEntry(String id) {
+        Entry entry = sEntries.get(id);
+        if (entry == null) {
+            entry = new Entry(TimeZone.getTimeZone(id));
+            entry.validUntil = Long.MIN_VALUE;
+            sEntries.put(id, entry);
+        }
+        return entry;
+    }
+
+    // Computes the offset at time and how long it stays the same: the zone
+    // is probed a day at a time, then the transition found is narrowed down
+    // to the millisecond.
+    private static void computeOffset(Entry entry, long time) {
+        final TimeZone zone = entry.zone;
+        final int offset = zone.getOffset(time);
+        entry.offset = offset;
+        entry.validFrom = time;
+        long low = time;
+        for (int i = 0; i < SEARCH_DAYS; i++) {
+            long high = low + DAY_MILLIS;
+            if (zone.getOffset(high) != offset) {
+                while (high - low > 1) {
+                    final long mid = low + (high - low) / 2;
+                    if (zone.getOffset(mid) == offset) {
+                        low = mid;
+                    } else {
+                        high = mid;
+                    }
+                }
+                entry.validUntil = high;
+                return;
+            }
+            low = high;
+        }
+        entry.validUntil = low;
+    }
+}
@@ -17,16 +17,15 @@
 package com.android.deskclock.worldclock;
 
 import java.text.Collator;
+import java.text.DateFormatSymbols;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Comparator;
-import java.util.Date;
-import java.util.Locale;
 import java.util.TimeZone;
 
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
+import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -44,6 +43,10 @@ public class WorldClockAdapter extends BaseAdapter {
     private final Context mContext;
     private String mClockStyle;
     private final Collator mCollator = Collator.getInstance();
+    // The local day of week and the minute it was computed for, so rows bound
+    // together don't each look up the default time zone.
+    private int mLocalDayOfWeek;
+    private long mLocalDayOfWeekMinute = -1;
 
     public WorldClockAdapter(Context context) {
         super();
@@ -61,7 +64,14 @@ public class WorldClockAdapter extends BaseAdapter {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
         mClockStyle = prefs.getString(SettingsActivity.KEY_CLOCK_STYLE,
                 mContext.getResources().getString(R.string.default_clock_style));
-        mCitiesList = Cities.readCitiesFromSharedPrefs(prefs).values().toArray();
+        // Reloads follow time zone changes too.
+        synchronized (this) {
+            mLocalDayOfWeekMinute = -1;
+        }
+        // The snapshot is shared, sort a copy.
+        final CityObj[] cities = SelectedCities.getInstance(context).getSnapshot();
+        mCitiesList = new Object[cities.length];
+        System.arraycopy(cities, 0, mCitiesList, 0, cities.length);
         sortList();
         mCitiesList = addHomeCity();
     }
@@ -93,9 +103,9 @@ public class WorldClockAdapter extends BaseAdapter {
         if (sharedPref.getBoolean(SettingsActivity.KEY_AUTO_HOME_CLOCK, false)) {
             String homeTZ = sharedPref.getString(
                     SettingsActivity.KEY_HOME_TZ, TimeZone.getDefault().getID());
-            final Date now = new Date();
-            return TimeZone.getTimeZone(homeTZ).getOffset(now.getTime())
-                    != TimeZone.getDefault().getOffset(now.getTime());
+            final long now = System.currentTimeMillis();
+            return TimeZoneOffsets.getOffset(homeTZ, now)
+                    != TimeZoneOffsets.getOffset(TimeZone.getDefault().getID(), now);
         } else {
             return false;
         }
@@ -106,12 +116,28 @@ public class WorldClockAdapter extends BaseAdapter {
                 && ((CityObj) mCitiesList[0]).mCityId == null;
     }
 
+    // A city and its current offset from GMT, looked up once per sort.
+    private static class SortKey {
+        final CityObj city;
+        final int offset;
+
+        SortKey(CityObj city, long now) {
+            this.city = city;
+            this.offset = city.mTimeZone == null ? 0
+                    : TimeZoneOffsets.getOffset(city.mTimeZone, now);
+        }
+    }
+
     private void sortList() {
-        final Date now = new Date();
+        final long now = System.currentTimeMillis();
+        final SortKey[] keys = new SortKey[mCitiesList.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new SortKey((CityObj) mCitiesList[i], now);
+        }
 
         // Sort by the Offset from GMT taking DST into account
         // and if the same sort by City Name
-        Arrays.sort(mCitiesList, new Comparator<Object>() {
+        Arrays.sort(keys, new Comparator<SortKey>() {
             private int safeCityNameCompare(CityObj city1, CityObj city2) {
                 if (city1.mCityName == null && city2.mCityName == null) {
                     return 0;
@@ -125,9 +151,9 @@ public class WorldClockAdapter extends BaseAdapter {
             }
 
             @Override
-            public int compare(Object object1, Object object2) {
-                CityObj city1 = (CityObj) object1;
-                CityObj city2 = (CityObj) object2;
+            public int compare(SortKey key1, SortKey key2) {
+                CityObj city1 = key1.city;
+                CityObj city2 = key2.city;
                 if (city1.mTimeZone == null && city2.mTimeZone == null) {
                     return safeCityNameCompare(city1, city2);
                 } else if (city1.mTimeZone == null) {
@@ -136,8 +162,8 @@ public class WorldClockAdapter extends BaseAdapter {
                     return 1;
                 }
 
-                int gmOffset1 = TimeZone.getTimeZone(city1.mTimeZone).getOffset(now.getTime());
-                int gmOffset2 = TimeZone.getTimeZone(city2.mTimeZone).getOffset(now.getTime());
+                int gmOffset1 = key1.offset;
+                int gmOffset2 = key2.offset;
                 if (gmOffset1 == gmOffset2) {
                     return safeCityNameCompare(city1, city2);
                 } else {
@@ -145,6 +171,37 @@ public class WorldClockAdapter extends BaseAdapter {
                 }
             }
         });
+        for (int i = 0; i < keys.length; i++) {
+            mCitiesList[i] = keys[i].city;
+        }
+    }
+
+    /**
+     * Returns the local day of week at now. It is only computed again once
+     * now is in another minute, so may be called for every row.
+     */
+    protected synchronized int getLocalDayOfWeek(long now) {
+        final long minute = now / DateUtils.MINUTE_IN_MILLIS;
+        if (minute != mLocalDayOfWeekMinute) {
+            mLocalDayOfWeek = TimeZoneOffsets.getDayOfWeek(now,
+                    TimeZoneOffsets.getOffset(TimeZone.getDefault().getID(), now));
+            mLocalDayOfWeekMinute = minute;
+        }
+        return mLocalDayOfWeek;
+    }
+
+    /**
+     * Returns the short name of the day of week in the city if it differs
+     * from the local one, as returned by getLocalDayOfWeek(now), null
+     * otherwise.
+     */
+    protected static String getCityDayOfWeek(CityObj cityObj, long now, int localDayOfWeek) {
+        final int cityDayOfWeek = TimeZoneOffsets.getDayOfWeek(now,
+                TimeZoneOffsets.getOffset(cityObj.mTimeZone, now));
+        if (localDayOfWeek == cityDayOfWeek) {
+            return null;
+        }
+        return DateFormatSymbols.getInstance().getShortWeekdays()[cityDayOfWeek];
     }
 
     @Override
@@ -221,14 +278,11 @@ public class WorldClockAdapter extends BaseAdapter {
             dclock.setTimeZone(cityObj.mTimeZone);
         }
         name.setText(cityObj.mCityName);
-        final Calendar now = Calendar.getInstance();
-        now.setTimeZone(TimeZone.getDefault());
-        int myDayOfWeek = now.get(Calendar.DAY_OF_WEEK);
-        now.setTimeZone(TimeZone.getTimeZone(cityObj.mTimeZone));
-        int cityDayOfWeek = now.get(Calendar.DAY_OF_WEEK);
-        if (myDayOfWeek != cityDayOfWeek) {
+        final long now = System.currentTimeMillis();
+        final String cityDayOfWeek = getCityDayOfWeek(cityObj, now, getLocalDayOfWeek(now));
+        if (cityDayOfWeek != null) {
             dayOfWeek.setText(mContext.getString(R.string.world_day_of_week_label,
-                    now.getDisplayName(Calendar.DAY_OF_WEEK, Calendar.SHORT, Locale.getDefault())));
+                    cityDayOfWeek));
             dayOfWeek.setVisibility(View.VISIBLE);
         } else {
             dayOfWeek.setVisibility(View.GONE);
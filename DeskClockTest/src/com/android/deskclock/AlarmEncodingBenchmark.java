@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock;
+
+import android.net.Uri;
+import android.os.Debug;
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Microbenchmark of passing an alarm through the AlarmManager intent, encoded with
+ * Alarm.toByteArray() and decoded with Alarm.fromByteArray(), against marshalling it through
+ * a Parcel as Alarms.enableAlert() used to. The time, allocations and bytes of a round trip
+ * are logged for both.
+ */
+public class AlarmEncodingBenchmark extends AndroidTestCase {
+    private static final String TAG = "AlarmEncodingBenchmark";
+
+    private static final int WARMUP_ROUNDS = 1000;
+    private static final int ROUNDS = 10000;
+
+    public void testRoundTripKeepsFields() {
+        assertRoundTrip(newAlarm());
+
+        final Alarm labelled = newAlarm();
+        labelled.label = "Wake up \u263c";
+        labelled.alert = Uri.parse("content://media/internal/audio/media/42");
+        labelled.vibrate = false;
+        assertRoundTrip(labelled);
+
+        final Alarm silent = newAlarm();
+        silent.silent = true;
+        silent.alert = null;
+        assertRoundTrip(silent);
+    }
+
+    public void testUnknownEncodingIsRejected() {
+        assertNull(Alarm.fromByteArray(null));
+        assertNull(Alarm.fromByteArray(new byte[3]));
+        final byte[] data = newAlarm().toByteArray();
+        data[0]++;
+        assertNull(Alarm.fromByteArray(data));
+    }
+
+    public void testEncodingIsSmallerThanParcel() {
+        final Alarm alarm = newAlarm();
+        final int encoded = alarm.toByteArray().length;
+        final int marshalled = marshall(alarm).length;
+        Log.i(TAG, "bytes: encoded " + encoded + ", parcel " + marshalled);
+        assertTrue(encoded < marshalled);
+    }
+
+    public void testEncodingAllocatesLessThanParcel() {
+        final Alarm alarm = newAlarm();
+        final Runnable encoding = new Runnable() {
+            @Override
+            public void run() {
+                Alarm.fromByteArray(alarm.toByteArray());
+            }
+        };
+        final Runnable parcel = new Runnable() {
+            @Override
+            public void run() {
+                unmarshall(marshall(alarm));
+            }
+        };
+
+        final long[] encodingStats = measure(encoding);
+        final long[] parcelStats = measure(parcel);
+        Log.i(TAG, "per round trip, encoded: " + encodingStats[0] + " ns, "
+                + encodingStats[1] + " allocations, " + encodingStats[2] + " bytes; parcel: "
+                + parcelStats[0] + " ns, " + parcelStats[1] + " allocations, "
+                + parcelStats[2] + " bytes");
+        assertTrue(encodingStats[2] < parcelStats[2]);
+    }
+
+    // A repeating alarm with the empty label and default alert, the most common kind.
+    private static Alarm newAlarm() {
+        final Alarm alarm = new Alarm();
+        alarm.id = 7;
+        alarm.enabled = true;
+        alarm.hour = 6;
+        alarm.minutes = 45;
+        alarm.daysOfWeek = new Alarm.DaysOfWeek(0x1f);
+        alarm.time = 1380000000000L;
+        return alarm;
+    }
+
+    private static void assertRoundTrip(Alarm alarm) {
+        final Alarm decoded = Alarm.fromByteArray(alarm.toByteArray());
+        assertNotNull(decoded);
+        assertEquals(alarm.id, decoded.id);
+        assertEquals(alarm.enabled, decoded.enabled);
+        assertEquals(alarm.hour, decoded.hour);
+        assertEquals(alarm.minutes, decoded.minutes);
+        assertEquals(alarm.daysOfWeek.getCoded(), decoded.daysOfWeek.getCoded());
+        assertEquals(alarm.time, decoded.time);
+        assertEquals(alarm.vibrate, decoded.vibrate);
+        assertEquals(alarm.label, decoded.label);
+        assertEquals(alarm.alert, decoded.alert);
+        assertEquals(alarm.silent, decoded.silent);
+    }
+
+    private static byte[] marshall(Alarm alarm) {
+        final Parcel out = Parcel.obtain();
+        alarm.writeToParcel(out, 0);
+        out.setDataPosition(0);
+        final byte[] data = out.marshall();
+        out.recycle();
+        return data;
+    }
+
+    private static Alarm unmarshall(byte[] data) {
+        final Parcel in = Parcel.obtain();
+        in.unmarshall(data, 0, data.length);
+        in.setDataPosition(0);
+        final Alarm alarm = Alarm.CREATOR.createFromParcel(in);
+        in.recycle();
+        return alarm;
+    }
+
+    // Returns the average time in nanoseconds, objects allocated and bytes allocated of a run
+    // of roundTrip, after warming it up.
+    private static long[] measure(Runnable roundTrip) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            roundTrip.run();
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        final long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            roundTrip.run();
+        }
+        final long nanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+
+        return new long[] {
+                nanos / ROUNDS,
+                Debug.getThreadAllocCount() / ROUNDS,
+                Debug.getThreadAllocSize() / ROUNDS
+        };
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.test.InstrumentationTestCase;
+import android.test.UiThreadTest;
+import android.util.Log;
+import android.view.View.MeasureSpec;
+
+import java.util.Arrays;
+
+/**
+ * Checks the frame statistics CircleTimerView keeps while animating, by drawing it into a
+ * bitmap over and over, and logs its draw time histogram.
+ */
+public class CircleTimerViewFrameStatsTest extends InstrumentationTestCase {
+    private static final String TAG = "CircleTimerViewFrameStatsTest";
+
+    private static final int SIZE = 400;
+    private static final int FRAMES = 120;
+
+    private CircleTimerView mView;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mView = new CircleTimerView(getInstrumentation().getTargetContext());
+        mView.measure(MeasureSpec.makeMeasureSpec(SIZE, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(SIZE, MeasureSpec.EXACTLY));
+        mView.layout(0, 0, SIZE, SIZE);
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mView.abortIntervalAnimation();
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    @UiThreadTest
+    public void testEveryDrawIsCounted() {
+        mView.setIntervalTime(60 * 1000);
+        mView.startIntervalAnimation();
+        drawFrames(FRAMES);
+
+        final long[] histogram = mView.getDrawTimeHistogram();
+        Log.i(TAG, "draw times (<1, <2, <4, <8, <16, >=16 ms): " + Arrays.toString(histogram));
+        assertEquals(FRAMES, mView.getFrameCount());
+        assertEquals(FRAMES, sum(histogram));
+    }
+
+    @UiThreadTest
+    public void testHistogramIsACopy() {
+        mView.setIntervalTime(60 * 1000);
+        mView.startIntervalAnimation();
+        drawFrames(1);
+        mView.getDrawTimeHistogram()[0] = 100;
+        assertEquals(1, sum(mView.getDrawTimeHistogram()));
+    }
+
+    @UiThreadTest
+    public void testResetFrameStats() {
+        mView.setIntervalTime(60 * 60 * 1000);
+        mView.startIntervalAnimation();
+        drawFrames(FRAMES);
+        mView.resetFrameStats();
+
+        assertEquals(0, mView.getFrameCount());
+        assertEquals(0, mView.getSkippedFrameCount());
+        assertEquals(0, sum(mView.getDrawTimeHistogram()));
+    }
+
+    @UiThreadTest
+    public void testSlowArcSkipsFrames() {
+        // Over an hour, the arc moves by a pixel every few seconds.
+        mView.setIntervalTime(60 * 60 * 1000);
+        mView.startIntervalAnimation();
+        drawFrames(FRAMES);
+
+        Log.i(TAG, "skipped " + mView.getSkippedFrameCount() + " frames for " + FRAMES
+                + " drawn");
+        assertEquals(FRAMES, mView.getFrameCount());
+        assertTrue(mView.getSkippedFrameCount() >= FRAMES);
+    }
+
+    @UiThreadTest
+    public void testFastArcSkipsNoFrames() {
+        // Over a second, the arc moves by more than a pixel every frame.
+        mView.setIntervalTime(1000);
+        mView.startIntervalAnimation();
+        drawFrames(FRAMES);
+
+        assertEquals(FRAMES, mView.getFrameCount());
+        assertEquals(0, mView.getSkippedFrameCount());
+    }
+
+    @UiThreadTest
+    public void testStillViewSkipsNoFrames() {
+        drawFrames(FRAMES);
+
+        assertEquals(FRAMES, mView.getFrameCount());
+        assertEquals(0, mView.getSkippedFrameCount());
+    }
+
+    private void drawFrames(int count) {
+        for (int i = 0; i < count; i++) {
+            mView.draw(mCanvas);
+        }
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock.timer;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.test.InstrumentationTestCase;
+import android.test.UiThreadTest;
+import android.util.Log;
+import android.view.View.MeasureSpec;
+
+import java.text.DecimalFormatSymbols;
+
+/**
+ * Benchmark of the allocations of a stopwatch frame of CountingTimerView, setting the time and
+ * drawing it, against formatting each field with String.format() and drawing the Strings as
+ * the view used to. The allocations per frame of both are logged.
+ */
+public class CountingTimerViewBenchmark extends InstrumentationTestCase {
+    private static final String TAG = "CountingTimerViewBenchmark";
+
+    private static final int WIDTH = 720;
+    private static final int HEIGHT = 240;
+    // A hundredth apart, all within the same second so the content description stays the same.
+    private static final long START_TIME = (1 * 60 * 60 + 2 * 60 + 3) * 1000;
+    private static final int FRAMES = 100;
+
+    private CountingTimerView mView;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mView = new CountingTimerView(getInstrumentation().getTargetContext());
+        mView.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+        mView.layout(0, 0, WIDTH, HEIGHT);
+        mBitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    @UiThreadTest
+    public void testFrameAllocatesLessThanFormatting() {
+        final long viewAllocations = countAllocations(new Frame() {
+            @Override
+            public void draw(long time) {
+                mView.setTime(time, true, true);
+                mView.draw(mCanvas);
+            }
+        });
+
+        final Paint paint = new Paint();
+        final long formattingAllocations = countAllocations(new Frame() {
+            @Override
+            public void draw(long time) {
+                final long seconds = time / 1000;
+                final long minutes = seconds / 60;
+                final long hours = minutes / 60;
+                float x = 0;
+                x = drawField(String.format("%d", hours), x, paint);
+                x = drawField(String.format("%02d", minutes % 60), x, paint);
+                x = drawField(String.format("%02d", seconds % 60), x, paint);
+                drawField(String.format("%02d", time % 1000 / 10), x, paint);
+            }
+        });
+
+        Log.i(TAG, "allocations per frame: setTime() and draw() " + viewAllocations / FRAMES
+                + " (" + viewAllocations + " in " + FRAMES + " frames), String.format() "
+                + formattingAllocations / FRAMES);
+        assertTrue(viewAllocations < FRAMES);
+        assertTrue(viewAllocations < formattingAllocations);
+    }
+
+    @UiThreadTest
+    public void testHundredHours() {
+        // Rounded up to the next second, as hundredths are not shown.
+        mView.setTime(100L * 60 * 60 * 1000 - 500, false, true);
+        assertEquals(localize("100:00:00"), mView.getTimeString());
+
+        mView.setTime(99L * 60 * 60 * 1000 + 59 * 60 * 1000 + 58 * 1000, false, true);
+        assertEquals(localize("99:59:58"), mView.getTimeString());
+    }
+
+    private float drawField(String field, float x, Paint paint) {
+        mCanvas.drawText(field, x, HEIGHT / 2, paint);
+        return x + paint.measureText(field);
+    }
+
+    // Replaces the ASCII digits of s with those of the default locale, as the view shows them.
+    private static String localize(String s) {
+        final char zero = DecimalFormatSymbols.getInstance().getZeroDigit();
+        final char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= '0' && chars[i] <= '9') {
+                chars[i] = (char) (zero + chars[i] - '0');
+            }
+        }
+        return new String(chars);
+    }
+
+    // Returns the number of objects allocated drawing FRAMES frames a hundredth apart, after
+    // drawing them once to warm up.
+    private static long countAllocations(Frame frame) {
+        for (int i = 0; i < FRAMES; i++) {
+            frame.draw(START_TIME + i * 10);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < FRAMES; i++) {
+            frame.draw(START_TIME + i * 10);
+        }
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+
+    private interface Frame {
+        void draw(long time);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2013 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.deskclock.widget.multiwaveview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.test.AndroidTestCase;
+import android.util.FloatMath;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/**
+ * Microbenchmark of PointCloud.draw() as GlowPadView calls it while the handle is dragged,
+ * with both the glow and the wave lighting up points. Its time per frame is logged next to
+ * that of drawing the same cloud point by point, computing each point's falloff as it goes.
+ */
+public class PointCloudBenchmark extends AndroidTestCase {
+    private static final String TAG = "PointCloudBenchmark";
+
+    private static final int SIZE = 640;
+    private static final float INNER_RADIUS = 40.0f;
+    private static final float OUTER_RADIUS = 300.0f;
+    private static final float GLOW_RADIUS = 200.0f;
+    private static final int WARMUP_FRAMES = 50;
+    private static final int FRAMES = 500;
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    public void testDrawIsFasterThanPointByPoint() {
+        final PointCloud cloud = new PointCloud(null);
+        cloud.makePointCloud(INNER_RADIUS, OUTER_RADIUS);
+        cloud.setCenter(SIZE / 2, SIZE / 2);
+        light(cloud);
+        final PointByPointCloud baseline = new PointByPointCloud(cloud);
+
+        final long cloudNanos = timeFrames(new Runnable() {
+            @Override
+            public void run() {
+                cloud.draw(mCanvas);
+            }
+        });
+        final long baselineNanos = timeFrames(new Runnable() {
+            @Override
+            public void run() {
+                baseline.draw(mCanvas);
+            }
+        });
+        Log.i(TAG, "us per frame: draw() " + cloudNanos / 1000 + ", point by point "
+                + baselineNanos / 1000);
+        assertTrue("draw() took " + cloudNanos + " ns per frame, point by point "
+                + baselineNanos, cloudNanos < baselineNanos);
+    }
+
+    public void testDrawWithNothingLitIsCheap() {
+        final PointCloud cloud = new PointCloud(null);
+        cloud.makePointCloud(INNER_RADIUS, OUTER_RADIUS);
+        cloud.setCenter(SIZE / 2, SIZE / 2);
+        final long darkNanos = timeFrames(new Runnable() {
+            @Override
+            public void run() {
+                cloud.draw(mCanvas);
+            }
+        });
+        light(cloud);
+        final long litNanos = timeFrames(new Runnable() {
+            @Override
+            public void run() {
+                cloud.draw(mCanvas);
+            }
+        });
+        Log.i(TAG, "us per frame: nothing lit " + darkNanos / 1000 + ", lit "
+                + litNanos / 1000);
+        assertTrue(darkNanos < litNanos);
+    }
+
+    // Lights the cloud as in the middle of a drag: the glow under the handle, and the wave
+    // part way out.
+    private static void light(PointCloud cloud) {
+        cloud.glowManager.setX(OUTER_RADIUS / 2);
+        cloud.glowManager.setY(0.0f);
+        cloud.glowManager.setRadius(GLOW_RADIUS);
+        cloud.glowManager.setAlpha(1.0f);
+        cloud.waveManager.setRadius(OUTER_RADIUS * 0.8f);
+        cloud.waveManager.setAlpha(1.0f);
+    }
+
+    // Returns the average time in nanoseconds of running frame, after warming it up.
+    private static long timeFrames(Runnable frame) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            frame.run();
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            frame.run();
+        }
+        return (System.nanoTime() - start) / FRAMES;
+    }
+
+    /**
+     * The same cloud drawn one circle per point, working out each point's glow and wave
+     * falloff with cos() and pow() as it is drawn.
+     */
+    private static class PointByPointCloud {
+        private static final float MIN_POINT_SIZE = 2.0f;
+        private static final float MAX_POINT_SIZE = 4.0f;
+        private static final int INNER_POINTS = 8;
+        private static final float PI = (float) Math.PI;
+
+        private final ArrayList<float[]> mPoints = new ArrayList<float[]>();
+        private final Paint mPaint = new Paint();
+        private final PointCloud mLights;
+
+        PointByPointCloud(PointCloud lights) {
+            mLights = lights;
+            mPaint.setFilterBitmap(true);
+            mPaint.setColor(Color.rgb(255, 255, 255));
+            mPaint.setAntiAlias(true);
+            mPaint.setDither(true);
+
+            final float pointAreaRadius = OUTER_RADIUS - INNER_RADIUS;
+            final float ds = 2.0f * PI * INNER_RADIUS / INNER_POINTS;
+            final int bands = Math.round(pointAreaRadius / ds);
+            final float dr = pointAreaRadius / bands;
+            float r = INNER_RADIUS;
+            for (int b = 0; b <= bands; b++, r += dr) {
+                final int pointsInBand = (int) (2.0f * PI * r / ds);
+                float eta = PI / 2.0f;
+                final float dEta = 2.0f * PI / pointsInBand;
+                for (int i = 0; i < pointsInBand; i++) {
+                    mPoints.add(new float[] { r * FloatMath.cos(eta), r * FloatMath.sin(eta), r });
+                    eta += dEta;
+                }
+            }
+        }
+
+        void draw(Canvas canvas) {
+            final float centerX = SIZE / 2;
+            final float centerY = SIZE / 2;
+            for (int i = 0; i < mPoints.size(); i++) {
+                final float[] point = mPoints.get(i);
+                final int alpha = getAlphaForPoint(point);
+                if (alpha == 0) continue;
+                final float pointSize = MAX_POINT_SIZE
+                        + (MIN_POINT_SIZE - MAX_POINT_SIZE) * point[2] / OUTER_RADIUS;
+                mPaint.setAlpha(alpha);
+                canvas.drawCircle(point[0] + centerX, point[1] + centerY, pointSize, mPaint);
+            }
+        }
+
+        private int getAlphaForPoint(float[] point) {
+            final PointCloud.GlowManager glow = mLights.glowManager;
+            final PointCloud.WaveManager wave = mLights.waveManager;
+            final float glowDistance = hypot(glow.getX() - point[0], glow.getY() - point[1]);
+            float glowAlpha = 0.0f;
+            if (glowDistance < glow.getRadius()) {
+                final float cosf = FloatMath.cos(PI * 0.25f * glowDistance / glow.getRadius());
+                glowAlpha = glow.getAlpha() * Math.max(0.0f, (float) Math.pow(cosf, 10.0f));
+            }
+
+            // The wave width is that of PointCloud.WaveManager.
+            final float width = 200.0f;
+            final float distanceToWaveRing = hypot(point[0], point[1]) - wave.getRadius();
+            float waveAlpha = 0.0f;
+            if (distanceToWaveRing < width * 0.5f && distanceToWaveRing < 0.0f) {
+                final float cosf = FloatMath.cos(PI * 0.25f * distanceToWaveRing / width);
+                waveAlpha = wave.getAlpha() * Math.max(0.0f, (float) Math.pow(cosf, 20.0f));
+            }
+            return (int) (Math.max(glowAlpha, waveAlpha) * 255);
+        }
+
+        private static float hypot(float x, float y) {
+            return FloatMath.sqrt(x * x + y * y);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+The iRemember source code (henceforth referred to as "iRemember") is
+copyrighted by Mike Walker, Adam Porter, Doug Schmidt, and Jules White
+at Vanderbilt University and the University of Maryland, Copyright (c)
+2014, all rights reserved.  Since iRemember is open-source, freely
+available software, you are free to use, modify, copy, and
+distribute--perpetually and irrevocably--the source code and object code
+produced from the source, as well as copy and distribute modified
+versions of this software. You must, however, include this copyright
+statement along with any code built using iRemember that you release. No
+copyright statement needs to be provided if you just ship binary
+executables of your software products.
+
+You can use iRemember software in commercial and/or binary software
+releases and are under no obligation to redistribute any of your source
+code that is built using the software. Note, however, that you may not
+misappropriate the iRemember code, such as copyrighting it yourself or
+claiming authorship of the iRemember software code, in a way that will
+prevent the software from being distributed freely using an open-source
+development model. You needn't inform anyone that you're using iRemember
+software in your software, though we encourage you to let us know so we
+can promote your project in our success stories.
+
+iRemember is provided as is with no warranties of any kind, including
+the warranties of design, merchantability, and fitness for a particular
+purpose, noninfringement, or arising from a course of dealing, usage or
+trade practice.  Vanderbilt University and University of Maryland, their
+employees, and students shall have no liability with respect to the
+infringement of copyrights, trade secrets or any patents by DOC software
+or any part thereof.  Moreover, in no event will Vanderbilt University,
+University of Maryland, their employees, or students be liable for any
+lost revenue or profits or other special, indirect and consequential
+damages.
+
+iRemember is provided with no support and without any obligation on the
+part of Vanderbilt University and University of Maryland, their
+employees, or students to assist in its use, correction, modification,
+or enhancement.
+
+The names Vanderbilt University and University of Maryland may not be
+used to endorse or promote products or services derived from this source
+without express written permission from Vanderbilt University or
+University of Maryland. This license grants no permission to call
+products or services derived from the iRemember source, nor does it
+grant permission for the name Vanderbilt University or
+University of Maryland to appear in their names.
+ */
+
+package edu.vuum.mocca.orm;
+
+import java.util.AbstractList;
+
+import android.database.Cursor;
+import edu.vuum.mocca.provider.MoocSchema;
+
+/**
+ * A read only List of the StoryData in a Cursor, for showing a list of
+ * stories without reading them all first.
+ * <p>
+ * The Cursor only needs the MoocSchema.Story.LIST_COLUMN_NAMES columns, so
+ * the StoryData in this list only have their KEY_ID, title, creationTime and
+ * storyTime set. A StoryData is only created when its row is asked for, and
+ * only the ones of the WINDOW_SIZE rows around the ones last asked for are
+ * kept, so the list takes the same memory however many stories there are.
+ * The full StoryData of a story can be loaded with
+ * MoocResolver.getStoryDataViaRowID().
+ * <p>
+ * Like the Cursor, it must only be used by one thread at a time.
+ * 
+ */
+public class StoryDataList extends AbstractList<StoryData> {
+
+	// Number of StoryData kept, more than a screen of rows.
+	private static final int WINDOW_SIZE = 64;
+
+	private Cursor mCursor;
+	private int mCount;
+	private int mIdColumn;
+	private int mTitleColumn;
+	private int mCreationTimeColumn;
+	private int mStoryTimeColumn;
+
+	// The StoryData created for each row, at row % WINDOW_SIZE.
+	private final StoryData[] mWindow = new StoryData[WINDOW_SIZE];
+	private final int[] mWindowRows = new int[WINDOW_SIZE];
+
+	/**
+	 * Constructor of an empty list
+	 */
+	public StoryDataList() {
+		swapCursor(null);
+	}
+
+	/**
+	 * Show the stories of another Cursor, closing the one shown until now.
+	 * 
+	 * @param cursor
+	 *            Cursor with the LIST_COLUMN_NAMES columns, or null for no
+	 *            stories
+	 */
+	public void swapCursor(final Cursor cursor) {
+		if (mCursor != null && mCursor != cursor) {
+			mCursor.close();
+		}
+		mCursor = cursor;
+		mCount = cursor != null ? cursor.getCount() : 0;
+		if (cursor != null) {
+			mIdColumn = cursor.getColumnIndex(MoocSchema.Story.Cols.ID);
+			mTitleColumn = cursor.getColumnIndex(MoocSchema.Story.Cols.TITLE);
+			mCreationTimeColumn = cursor
+					.getColumnIndex(MoocSchema.Story.Cols.CREATION_TIME);
+			mStoryTimeColumn = cursor
+					.getColumnIndex(MoocSchema.Story.Cols.STORY_TIME);
+		}
+		for (int i = 0; i < WINDOW_SIZE; i++) {
+			mWindow[i] = null;
+			mWindowRows[i] = -1;
+		}
+	}
+
+	/**
+	 * Close the Cursor, leaving the list empty.
+	 */
+	public void close() {
+		swapCursor(null);
+	}
+
+	@Override
+	public int size() {
+		return mCount;
+	}
+
+	@Override
+	public StoryData get(final int row) {
+		if (row < 0 || row >= mCount) {
+			throw new IndexOutOfBoundsException("row " + row + " of "
+					+ mCount);
+		}
+		final int slot = row % WINDOW_SIZE;
+		if (mWindowRows[slot] != row) {
+			mCursor.moveToPosition(row);
+			mWindow[slot] = new StoryData(mCursor.getLong(mIdColumn), 0, 0,
+					mCursor.getString(mTitleColumn), null, null, null, null,
+					null, null, mCursor.getLong(mCreationTimeColumn),
+					mCursor.getLong(mStoryTimeColumn), 0, 0);
+			mWindowRows[slot] = row;
+		}
+		return mWindow[slot];
+	}
+}
@@ -92,10 +92,28 @@ public class MoocSchema {
 		public static final String PATH_FOR_ID = "story/*";
 		public static final int PATH_FOR_ID_TOKEN = 120;
 
+		// BASE_URI/story_search?q=words - stories with words in their title,
+		// body or tags, matching the last word as a prefix
+		public static final String SEARCH_PATH = "story_search";
+		public static final int SEARCH_PATH_TOKEN = 130;
+		public static final String SEARCH_QUERY_PARAMETER = "q";
+
 		// URI for all content stored as story entity
 		public static final Uri CONTENT_URI = BASE_URI.buildUpon()
 				.appendPath(PATH).build();
 
+		// URI to search the stories with, see getSearchUri()
+		public static final Uri SEARCH_URI = BASE_URI.buildUpon()
+				.appendPath(SEARCH_PATH).build();
+
+		/**
+		 * Get the URI of the stories matching the words of a search.
+		 */
+		public static Uri getSearchUri(final String words) {
+			return SEARCH_URI.buildUpon()
+				.appendQueryParameter(SEARCH_QUERY_PARAMETER, words).build();
+		}
+
 		private final static String MIME_TYPE_END = "story";
 
 		// define the MIME type of data in the content provider
@@ -111,6 +129,11 @@ public class MoocSchema {
 				Cols.IMAGE_LINK, Cols.TAGS, Cols.CREATION_TIME,
 				Cols.STORY_TIME, Cols.LATITUDE, Cols.LONGITUDE };
 
+		// the columns a list of stories shows, the rest is only loaded to view
+		// or edit a story
+		public static final String[] LIST_COLUMN_NAMES = { Cols.ID,
+				Cols.TITLE, Cols.CREATION_TIME, Cols.STORY_TIME };
+
 		public static ContentValues initializeWithDefault(
 				final ContentValues assignedValues) {
 			// final Long now = Long.valueOf(System.currentTimeMillis());
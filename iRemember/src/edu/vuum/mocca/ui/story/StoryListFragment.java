@@ -48,11 +48,13 @@ University of Maryland to appear in their names.
 
 package edu.vuum.mocca.ui.story;
 
-import java.util.ArrayList;
-
 import android.app.Activity;
+import android.database.Cursor;
 import android.graphics.Color;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.RemoteException;
 import android.support.v4.app.ListFragment;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -66,8 +68,7 @@ import android.widget.EditText;
 import android.widget.ListView;
 import edu.vanderbilt.mooc.R;
 import edu.vuum.mocca.orm.MoocResolver;
-import edu.vuum.mocca.orm.StoryData;
-import edu.vuum.mocca.provider.MoocSchema;
+import edu.vuum.mocca.orm.StoryDataList;
 
 /**
  * Fragment to hold all the UI components and related Logic for Listing
@@ -80,13 +81,28 @@ public class StoryListFragment extends ListFragment {
 
 	static final String LOG_TAG = StoryListFragment.class.getCanonicalName();
 
+	// How long to wait after the filter last changed before searching, so a
+	// search isn't made for every keystroke.
+	private static final long FILTER_DELAY_MS = 300;
+
 	OnOpenWindowInterface mOpener;
 	MoocResolver resolver;
-	ArrayList<StoryData> StoryData;
+	StoryDataList StoryData;
 	private StoryDataArrayAdaptor aa;
 
 	EditText filterET;
 
+	private final Handler mHandler = new Handler();
+	// The search whose results the list is waiting for, if any.
+	private SearchTask mSearchTask;
+
+	private final Runnable mUpdateStoryData = new Runnable() {
+		@Override
+		public void run() {
+			updateStoryData();
+		}
+	};
+
 	/**
 	 * @see android.support.v4.app.Fragment#onAttach(android.app.Activity)
 	 */
@@ -126,7 +142,7 @@ public class StoryListFragment extends ListFragment {
 		Log.d(LOG_TAG, "onCreate");
 		super.onCreate(savedInstanceState);
 		resolver = new MoocResolver(getActivity());
-		StoryData = new ArrayList<StoryData>();
+		StoryData = new StoryDataList();
 		setRetainInstance(true);
 	}
 
@@ -151,7 +167,8 @@ public class StoryListFragment extends ListFragment {
 			
 			@Override
 			public void onTextChanged(CharSequence s, int start, int before, int count) {
-				updateStoryData();
+				mHandler.removeCallbacks(mUpdateStoryData);
+				mHandler.postDelayed(mUpdateStoryData, FILTER_DELAY_MS);
 			}
 			
 			@Override
@@ -173,33 +190,66 @@ public class StoryListFragment extends ListFragment {
 	}
 
 	//
-	// This function is called every time the filter EditText is changed
+	// This function is called once the filter EditText stops changing
 	// This function should update the ListView to match the specified
 	// filter text.
 	//
 	
 	public void updateStoryData() {
 		Log.d(LOG_TAG, "updateStoryData");
-		try {
-			StoryData.clear();
+		mHandler.removeCallbacks(mUpdateStoryData);
+		// Only the latest search matters.
+		if (mSearchTask != null) {
+			mSearchTask.cancel(false);
+		}
+		mSearchTask = new SearchTask();
+		mSearchTask.execute(filterET.getText().toString());
+	}
 
-			String filterWord = filterET.getText().toString();
+	/**
+	 * Searches the stories off the main thread, and shows them in the list
+	 * unless another search was started in the meantime. Only the list
+	 * columns are read, and only for the rows the list shows.
+	 */
+	private class SearchTask extends AsyncTask<String, Void, Cursor> {
 
-			// create String that will match with 'like' in query
-			filterWord = "%" + filterWord + "%";
+		@Override
+		protected Cursor doInBackground(String... words) {
+			try {
+				final Cursor cursor = resolver.searchStoryList(words[0], null);
+				if (cursor != null) {
+					// Run the query here rather than on the main thread.
+					cursor.getCount();
+				}
+				return cursor;
+			} catch (RemoteException e) {
+				Log.e(LOG_TAG,
+						"Error connecting to Content Provider" + e.getMessage());
+				return null;
+			}
+		}
 
-			ArrayList<StoryData> currentList2 = resolver.queryStoryData(null,
-					MoocSchema.Story.Cols.TITLE + " LIKE ? ",
-					new String[] { filterWord }, null);
-			
-			StoryData.addAll(currentList2);
-			aa.notifyDataSetChanged();
-		} catch (Exception e) {
-			Log.e(LOG_TAG,
-					"Error connecting to Content Provider" + e.getMessage());
-			e.printStackTrace();
+		@Override
+		protected void onPostExecute(Cursor result) {
+			if (mSearchTask != this) {
+				if (result != null) {
+					result.close();
+				}
+				return;
+			}
+			mSearchTask = null;
+			if (result != null) {
+				StoryData.swapCursor(result);
+				aa.notifyDataSetChanged();
+			}
+		}
+
+		@Override
+		protected void onCancelled(Cursor result) {
+			if (result != null) {
+				result.close();
+			}
 		}
-		
 	}
 
 	@Override
@@ -243,6 +293,32 @@ public class StoryListFragment extends ListFragment {
 		updateStoryData();
 	}
 
+	@Override
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.support.v4.app.ListFragment#onDestroyView()
+	 */
+	public void onDestroyView() {
+		super.onDestroyView();
+		mHandler.removeCallbacks(mUpdateStoryData);
+	}
+
+	@Override
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see android.support.v4.app.Fragment#onDestroy()
+	 */
+	public void onDestroy() {
+		super.onDestroy();
+		if (mSearchTask != null) {
+			mSearchTask.cancel(false);
+			mSearchTask = null;
+		}
+		StoryData.close();
+	}
+
 	@Override
 	/*
 	 * (non-Javadoc)
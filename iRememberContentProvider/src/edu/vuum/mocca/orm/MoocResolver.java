@@ -275,6 +275,42 @@ public class MoocResolver {
 		return rValue;
 	}
 
+	/**
+	 * Search the StoryData with the given words in their title, body or tags,
+	 * the last word matching as a prefix. Every StoryData matches if there
+	 * are no words.
+	 * 
+	 * @param words
+	 * @param sortOrder
+	 * @return an ArrayList of StoryData objects
+	 * @throws RemoteException
+	 */
+	public ArrayList<StoryData> searchStoryData(final String words,
+			final String sortOrder) throws RemoteException {
+		Cursor result = cr.query(MoocSchema.Story.getSearchUri(words), null,
+				null, null, sortOrder);
+		ArrayList<StoryData> rValue = new ArrayList<StoryData>();
+		rValue.addAll(StoryCreator.getStoryDataArrayListFromCursor(result));
+		result.close();
+		return rValue;
+	}
+
+	/**
+	 * Search the stories like searchStoryData(), but return a Cursor with
+	 * only the MoocSchema.Story.LIST_COLUMN_NAMES columns instead of reading
+	 * them all into StoryData. The caller must close the Cursor.
+	 * 
+	 * @param words
+	 * @param sortOrder
+	 * @return Cursor of the matching stories, or null
+	 * @throws RemoteException
+	 */
+	public Cursor searchStoryList(final String words, final String sortOrder)
+			throws RemoteException {
+		return cr.query(MoocSchema.Story.getSearchUri(words),
+				MoocSchema.Story.LIST_COLUMN_NAMES, null, null, sortOrder);
+	}
+
 	/**
 	 * Query for each ORM TagsData, Similar to standard Content Provider query,
 	 * just different return type
@@ -2,6 +2,7 @@
 
 package edu.vuum.mocca.provider;
 
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
@@ -9,6 +10,7 @@ import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabase.CursorFactory;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 import android.util.Log;
 
 /**
@@ -23,14 +25,20 @@ public class MoocDataDBAdapter {
     private static final String LOG_TAG = MoocDataDBAdapter.class
             .getCanonicalName();
 
-    private static final String DATABASE_NAME = "myDatabase.db";
+    static final String DATABASE_NAME = "myDatabase.db";
 
     // ST:databaseTableVariableDeclaration:start
     static final String DATABASE_TABLE_STORY = MoocSchema.Story.TABLE_NAME;
     static final String DATABASE_TABLE_TAGS = MoocSchema.Tags.TABLE_NAME;
+    // Full text index of the stories, its docid is the story's _id.
+    static final String DATABASE_TABLE_STORY_SEARCH = "story_search";
     // ST:databaseTableVariableDeclaration:finish
 
-    static final int DATABASE_VERSION = 2;
+    // Bump when the schema changes, and add the migration to the new version
+    // to myDbHelper.migrateTo().
+    static final int DATABASE_VERSION = 5;
+    // Oldest version that can be migrated, older DBs are recreated.
+    private static final int OLDEST_MIGRATED_VERSION = 2;
 
     // The SHORT name of each column in your table
     // ST:createShortVariables:start
@@ -89,6 +97,62 @@ public class MoocDataDBAdapter {
             + " );"; // end table
     // ST:databaseTableCreationStrings:finish
 
+    // SQL Statements to create the indexes on the columns stories and tags are
+    // looked up and sorted by. The stories of a login are looked up sorted by
+    // creation time, which one index on both columns does without a sort.
+    private static final String[] DATABASE_CREATE_INDEXES = {
+            createIndex(DATABASE_TABLE_STORY, Story_LoginId,
+                    Story_CreationTime),
+            createIndex(DATABASE_TABLE_STORY, Story_StoryId),
+            createIndex(DATABASE_TABLE_STORY, Story_CreationTime),
+            createIndex(DATABASE_TABLE_STORY, Story_StoryTime),
+            createIndex(DATABASE_TABLE_TAGS, Tags_LoginId),
+            createIndex(DATABASE_TABLE_TAGS, Tags_StoryId) };
+
+    private static String createIndex(final String table,
+            final String... columns) {
+        final StringBuilder name = new StringBuilder(table);
+        final StringBuilder list = new StringBuilder();
+        for (String column : columns) {
+            name.append('_').append(column);
+            if (list.length() > 0) {
+                list.append(", ");
+            }
+            list.append(column);
+        }
+        return "create index if not exists " + name + "_index on " + table
+                + " (" + list + ");";
+    }
+
+    // SQL Statements to create the full text index of the stories, and the
+    // triggers that keep it up to date as stories change.
+    private static final String SEARCH_COLUMNS = Story_Title + ", "
+            + Story_Body + ", " + Story_Tags;
+    private static final String SEARCH_INSERT_NEW = "insert into "
+            + DATABASE_TABLE_STORY_SEARCH + " (docid, " + SEARCH_COLUMNS
+            + ") values (new." + Story_KEY_ID + ", new." + Story_Title
+            + ", new." + Story_Body + ", new." + Story_Tags + ");";
+    private static final String SEARCH_DELETE_OLD = "delete from "
+            + DATABASE_TABLE_STORY_SEARCH + " where docid = old."
+            + Story_KEY_ID + ";";
+    private static final String[] DATABASE_CREATE_SEARCH = {
+            "create virtual table " + DATABASE_TABLE_STORY_SEARCH
+                    + " using fts3 (" + SEARCH_COLUMNS + ");",
+            "create trigger " + DATABASE_TABLE_STORY_SEARCH
+                    + "_insert after insert on " + DATABASE_TABLE_STORY
+                    + " begin " + SEARCH_INSERT_NEW + " end;",
+            "create trigger " + DATABASE_TABLE_STORY_SEARCH
+                    + "_update after update on " + DATABASE_TABLE_STORY
+                    + " begin " + SEARCH_DELETE_OLD + " " + SEARCH_INSERT_NEW
+                    + " end;",
+            "create trigger " + DATABASE_TABLE_STORY_SEARCH
+                    + "_delete after delete on " + DATABASE_TABLE_STORY
+                    + " begin " + SEARCH_DELETE_OLD + " end;" };
+    // Selection of the stories matching a full text query.
+    private static final String SEARCH_SELECTION = Story_KEY_ID
+            + " in (select docid from " + DATABASE_TABLE_STORY_SEARCH
+            + " where " + DATABASE_TABLE_STORY_SEARCH + " match ?)";
+
     // Variable to hold the database instance.
     private SQLiteDatabase db;
     // Context of the application using the database.
@@ -133,6 +197,10 @@ public class MoocDataDBAdapter {
     /**
      * open the DB Get Memory or File version of DB, and write/read access or
      * just read access if that is all that is possible.
+     * <p>
+     * A writable file DB is put in write ahead logging mode where available,
+     * so reads from other threads don't wait for a write to finish, nor a
+     * write for the reads.
      * 
      * @return this MoocDataDBAdaptor
      * @throws SQLException
@@ -141,12 +209,23 @@ public class MoocDataDBAdapter {
         Log.d(LOG_TAG, "open()");
         try {
             db = dbHelper.getWritableDatabase();
+            if (MEMORY_ONLY_DB == false
+                    && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                enableWriteAheadLogging();
+            }
         } catch (SQLException ex) {
             db = dbHelper.getReadableDatabase();
         }
         return this;
     }
 
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void enableWriteAheadLogging() {
+        if (db.enableWriteAheadLogging() == false) {
+            Log.w(LOG_TAG, "write ahead logging not enabled, reads will block on writes");
+        }
+    }
+
     /**
      * Remove a row of the DB where the rowIndex matches.
      * 
@@ -195,6 +274,36 @@ public class MoocDataDBAdapter {
         return cursor;        
     }
 
+    /**
+     * Query the stories matching a full text query, in the SQLite FTS3 query
+     * syntax, and the selection if there is one.
+     * 
+     * @param match
+     * @param projection
+     * @param selection
+     * @param selectionArgs
+     * @param sortOrder
+     * @return Cursor of results
+     */
+    public Cursor searchStories(final String match, final String[] projection,
+            final String selection, final String[] selectionArgs,
+            final String sortOrder) {
+        Log.d(LOG_TAG, "searchStories(" + match + ")");
+        String fullSelection = SEARCH_SELECTION;
+        String[] fullSelectionArgs = new String[] { match };
+        if (selection != null && selection.length() > 0) {
+            fullSelection = fullSelection + " and (" + selection + ")";
+            if (selectionArgs != null) {
+                fullSelectionArgs = new String[selectionArgs.length + 1];
+                fullSelectionArgs[0] = match;
+                System.arraycopy(selectionArgs, 0, fullSelectionArgs, 1,
+                        selectionArgs.length);
+            }
+        }
+        return db.query(DATABASE_TABLE_STORY, projection, fullSelection,
+                fullSelectionArgs, null, null, sortOrder);
+    }
+
     /**
      * close the DB.
      */
@@ -211,6 +320,14 @@ public class MoocDataDBAdapter {
         db.beginTransaction();
     }
 
+    /**
+     * Mark the current transaction as successful, so ending it commits its
+     * changes instead of rolling them back.
+     */
+    public void setTransactionSuccessful() {
+        db.setTransactionSuccessful();
+    }
+
     /**
      * End a transaction.
      */
@@ -296,11 +413,36 @@ public class MoocDataDBAdapter {
             db.execSQL(DATABASE_CREATE_STORY);
             db.execSQL(DATABASE_CREATE_TAGS);
             // ST:createTable:finish
+            createIndexes(db);
+            createSearch(db);
+
+        }
+
+        private static void createIndexes(SQLiteDatabase db) {
+            for (String createIndex : DATABASE_CREATE_INDEXES) {
+                db.execSQL(createIndex);
+            }
+        }
 
+        private static void createSearch(SQLiteDatabase db) {
+            for (String createSearch : DATABASE_CREATE_SEARCH) {
+                db.execSQL(createSearch);
+            }
         }
 
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            if (oldVersion >= OLDEST_MIGRATED_VERSION) {
+                // Migrate one version at a time, keeping the data. This runs
+                // in a transaction, so a failed migration leaves the old DB.
+                Log.w(LOG_TAG + "DBHelper", "Migrating from version "
+                        + oldVersion + " to " + newVersion);
+                for (int version = oldVersion + 1; version <= newVersion; version++) {
+                    migrateTo(db, version);
+                }
+                return;
+            }
+
             // Log version upgrade.
             Log.w(LOG_TAG + "DBHelper", "Upgrading from version " + oldVersion
                     + " to " + newVersion + ", which will destroy all old data");
@@ -311,6 +453,7 @@ public class MoocDataDBAdapter {
             // ST:dropTableIfExists:start
             db.execSQL("DROP TABLE IF EXISTS " + DATABASE_TABLE_STORY);
             db.execSQL("DROP TABLE IF EXISTS " + DATABASE_TABLE_TAGS);
+            db.execSQL("DROP TABLE IF EXISTS " + DATABASE_TABLE_STORY_SEARCH);
             // ST:dropTableIfExists:finish
 
             // Create a new one.
@@ -318,6 +461,33 @@ public class MoocDataDBAdapter {
 
         }
 
+        /**
+         * Migrate the DB from the version before to version.
+         */
+        private static void migrateTo(SQLiteDatabase db, int version) {
+            switch (version) {
+            case 3:
+                createIndexes(db);
+                break;
+            case 4:
+                createSearch(db);
+                db.execSQL("insert into " + DATABASE_TABLE_STORY_SEARCH
+                        + " (docid, " + SEARCH_COLUMNS + ") select "
+                        + Story_KEY_ID + ", " + SEARCH_COLUMNS + " from "
+                        + DATABASE_TABLE_STORY + ";");
+                break;
+            case 5:
+                // The login index became a login and creation time index.
+                createIndexes(db);
+                db.execSQL("drop index if exists " + DATABASE_TABLE_STORY
+                        + "_" + Story_LoginId + "_index;");
+                break;
+            default:
+                throw new IllegalStateException("No migration to version "
+                        + version);
+            }
+        }
+
     }
 
 }
@@ -5,11 +5,16 @@ package edu.vuum.mocca.provider;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.net.Uri;
@@ -27,6 +32,12 @@ import android.util.Log;
  * and must be stored in a content provider. If you don't need to share data
  * amongst multiple applications you can use a database directly via
  * SQLiteDatabase.
+ * <p>
+ * The provider doesn't lock anything itself: its methods are called from
+ * binder threads and go straight to the database, which is opened in write
+ * ahead logging mode when the platform supports it. Queries then run
+ * concurrently with each other and with the single writer the database allows
+ * at a time, instead of queueing up behind it.
  * 
  * @author Michael A. Walker
  * 
@@ -50,12 +61,17 @@ public class MoocProvider extends ContentProvider {
     // ST:createShortURIMatchingTokens:begin
     public static final int STORY_ALL_ROWS = MoocSchema.Story.PATH_TOKEN;
     public static final int STORY_SINGLE_ROW = MoocSchema.Story.PATH_FOR_ID_TOKEN;
+    public static final int STORY_SEARCH = MoocSchema.Story.SEARCH_PATH_TOKEN;
     public static final int TAGS_ALL_ROWS = MoocSchema.Tags.PATH_TOKEN;
     public static final int TAGS_SINGLE_ROW = MoocSchema.Tags.PATH_FOR_ID_TOKEN;
     // ST:createShortURIMatchingTokens:finish
 
     private static final UriMatcher uriMatcher = MoocSchema.URI_MATCHER;
 
+    // Tables changed by the batch the calling thread is applying, to notify
+    // once it is committed. null when the thread isn't applying a batch.
+    private final ThreadLocal<HashSet<Uri>> mBatchChanges = new ThreadLocal<HashSet<Uri>>();
+
     @Override
     /**
      * Implement this to initialize your content provider on startup.
@@ -63,7 +79,7 @@ public class MoocProvider extends ContentProvider {
      * main thread at application launch time. It must not perform lengthy operations,
      * or application startup will be delayed.
      */
-    synchronized public boolean onCreate() {
+    public boolean onCreate() {
         Log.d(LOG_TAG, "onCreate()");
         mDB = new MoocDataDBAdapter(getContext());
         mDB.open();
@@ -77,7 +93,7 @@ public class MoocProvider extends ContentProvider {
      * or vnd.android.cursor.dir/ for multiple items. This method can be called from multiple 
      * threads, as described in Processes and Threads.
      */
-    synchronized public String getType(Uri uri) {
+    public String getType(Uri uri) {
         Log.d(LOG_TAG, "getType()");
         switch (uriMatcher.match(uri)) {
 
@@ -86,6 +102,8 @@ public class MoocProvider extends ContentProvider {
             return MoocSchema.Story.CONTENT_TYPE_DIR;
         case STORY_SINGLE_ROW:
             return MoocSchema.Story.CONTENT_ITEM_TYPE;
+        case STORY_SEARCH:
+            return MoocSchema.Story.CONTENT_TYPE_DIR;
         case TAGS_ALL_ROWS:
             return MoocSchema.Tags.CONTENT_TYPE_DIR;
         case TAGS_SINGLE_ROW:
@@ -103,7 +121,7 @@ public class MoocProvider extends ContentProvider {
      * Retrieve data from your provider. Use the arguments to select the table to query,
      * the rows and columns to return, and the sort order of the result. Return the data as a Cursor object.
      */
-    synchronized public Cursor query(final Uri uri, final String[] projection,
+    public Cursor query(final Uri uri, final String[] projection,
             final String selection, final String[] selectionArgs,
             final String sortOrder) {
         Log.d(LOG_TAG, "query()");
@@ -129,17 +147,54 @@ public class MoocProvider extends ContentProvider {
         }
         // ST:createPublicQueryforRelations:finish
 
+        case STORY_SEARCH: {
+            final String match = toMatch(uri
+                    .getQueryParameter(MoocSchema.Story.SEARCH_QUERY_PARAMETER));
+            if (match == null) {
+                // Nothing to search for, so every story matches.
+                return query(uri, MoocSchema.Story.TABLE_NAME, projection,
+                        selection, selectionArgs, sortOrder);
+            }
+            return mDB.searchStories(match, projection, selection,
+                    selectionArgs, sortOrder);
+        }
+
         default:
             return null;
         }
 
     }
 
+    /*
+     * Turn the words searched for into a full text query matching each word,
+     * and the last one as a prefix since it may not be fully typed yet.
+     * Returns null if there are no words.
+     */
+    private static String toMatch(final String words) {
+        if (words == null) {
+            return null;
+        }
+        final StringBuilder match = new StringBuilder();
+        for (String word : words.split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() > 0) {
+                if (match.length() > 0) {
+                    match.append("\" ");
+                }
+                // Quoted so words like OR aren't taken as operators.
+                match.append('"').append(word);
+            }
+        }
+        if (match.length() == 0) {
+            return null;
+        }
+        return match.append("*\"").toString();
+    }
+
     /*
      * Private query that does the actual query based on the table
      */
 
-    synchronized private Cursor query(final Uri uri, final String tableName,
+    private Cursor query(final Uri uri, final String tableName,
             final String[] projection, final String selection,
             final String[] selectionArgs, final String sortOrder) {
 
@@ -157,7 +212,7 @@ public class MoocProvider extends ContentProvider {
      * (non-Javadoc)
      * @see android.content.ContentProvider#insert(android.net.Uri, android.content.ContentValues)
      */
-    synchronized public Uri insert(Uri uri, ContentValues assignedValues) {
+    public Uri insert(Uri uri, ContentValues assignedValues) {
 
         Log.d(LOG_TAG, "query()");
         final int match = uriMatcher.match(uri);
@@ -176,8 +231,8 @@ public class MoocProvider extends ContentProvider {
             }
             final Uri insertedID = ContentUris.withAppendedId(
                     STORY_CONTENT_URI, rowID);
-            getContext().getContentResolver().notifyChange(insertedID, null);
-            return ContentUris.withAppendedId(STORY_CONTENT_URI, rowID);
+            notifyChange(insertedID);
+            return insertedID;
         }
         case TAGS_ALL_ROWS: {
             final ContentValues values = MoocSchema.Tags
@@ -191,8 +246,8 @@ public class MoocProvider extends ContentProvider {
             }
             final Uri insertedID = ContentUris.withAppendedId(TAGS_CONTENT_URI,
                     rowID);
-            getContext().getContentResolver().notifyChange(insertedID, null);
-            return ContentUris.withAppendedId(TAGS_CONTENT_URI, rowID);
+            notifyChange(insertedID);
+            return insertedID;
         }
         // ST:createUpsertForRelations:finish
 
@@ -270,7 +325,7 @@ public class MoocProvider extends ContentProvider {
     /**
      * Implement this to handle requests to delete one or more rows.
      */
-    synchronized public int delete(Uri uri, String whereClause,
+    public int delete(Uri uri, String whereClause,
             String[] whereArgs) {
 
         switch (uriMatcher.match(uri)) {
@@ -307,7 +362,7 @@ public class MoocProvider extends ContentProvider {
             final String whereClause, final String[] whereArgs) {
         int count = mDB.delete(tableName, whereClause, whereArgs);
         if (count > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return count;
     }
@@ -316,7 +371,7 @@ public class MoocProvider extends ContentProvider {
     /**
      * Implement this to handle requests to update one or more rows.
      */
-    synchronized public int update(Uri uri, ContentValues values,
+    public int update(Uri uri, ContentValues values,
             String whereClause, String[] whereArgs) {
         Log.d(LOG_TAG, "query()");
 
@@ -355,8 +410,101 @@ public class MoocProvider extends ContentProvider {
             final String[] whereArgs) {
         int count = mDB.update(tableName, values, whereClause, whereArgs);
         if (count > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
+        }
+        return count;
+    }
+
+    @Override
+    /**
+     * Insert all the values in one transaction, notifying of the change once
+     * they are all in.
+     */
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        Log.d(LOG_TAG, "bulkInsert()");
+        int count = 0;
+        boolean successful = false;
+        beginBatch();
+        try {
+            for (ContentValues value : values) {
+                if (insert(uri, value) != null) {
+                    count++;
+                }
+            }
+            mDB.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            endBatch(successful);
         }
         return count;
     }
-}
\ No newline at end of file
+
+    @Override
+    /**
+     * Apply the operations in one transaction, so they all take effect or
+     * none does, notifying of the changes once they are all applied.
+     */
+    public ContentProviderResult[] applyBatch(
+            ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        Log.d(LOG_TAG, "applyBatch()");
+        boolean successful = false;
+        beginBatch();
+        try {
+            final ContentProviderResult[] results = super.applyBatch(operations);
+            mDB.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            endBatch(successful);
+        }
+    }
+
+    /*
+     * Start a transaction in which the changes made by the calling thread are
+     * only notified by endBatch()
+     */
+    private void beginBatch() {
+        mDB.startTransaction();
+        mBatchChanges.set(new HashSet<Uri>());
+    }
+
+    /*
+     * End the transaction started by beginBatch(), and notify of the changes
+     * made if it was successful
+     */
+    private void endBatch(final boolean successful) {
+        final HashSet<Uri> changes = mBatchChanges.get();
+        mBatchChanges.set(null);
+        mDB.endTransaction();
+        if (successful) {
+            for (Uri uri : changes) {
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
+        }
+    }
+
+    /*
+     * Notify of a change to uri, or if a batch is being applied, remember the
+     * table it is in to notify once the batch is done
+     */
+    private void notifyChange(final Uri uri) {
+        final HashSet<Uri> changes = mBatchChanges.get();
+        if (changes == null) {
+            getContext().getContentResolver().notifyChange(uri, null);
+            return;
+        }
+        switch (uriMatcher.match(uri)) {
+        case STORY_ALL_ROWS:
+        case STORY_SINGLE_ROW:
+            changes.add(STORY_CONTENT_URI);
+            break;
+        case TAGS_ALL_ROWS:
+        case TAGS_SINGLE_ROW:
+            changes.add(TAGS_CONTENT_URI);
+            break;
+        default:
+            changes.add(uri);
+        }
+    }
+}
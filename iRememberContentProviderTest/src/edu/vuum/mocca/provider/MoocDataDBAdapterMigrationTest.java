@@ -0,0 +1,189 @@
+package edu.vuum.mocca.provider;
+
+import java.util.HashSet;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+/**
+ * Check that MoocDataDBAdapter migrates databases of older versions to the
+ * current one, keeping their stories and tags.
+ */
+public class MoocDataDBAdapterMigrationTest extends AndroidTestCase {
+
+    private static final String STORY = MoocSchema.Story.TABLE_NAME;
+    private static final String TAGS = MoocSchema.Tags.TABLE_NAME;
+
+    // The tables as version 2 created them.
+    private static final String[] VERSION_2 = {
+            "create table " + STORY + " ("
+                    + MoocSchema.Story.Cols.ID
+                    + " integer primary key autoincrement, "
+                    + MoocSchema.Story.Cols.LOGIN_ID + " INTEGER ,"
+                    + MoocSchema.Story.Cols.STORY_ID + " INTEGER ,"
+                    + MoocSchema.Story.Cols.TITLE + " TEXT ,"
+                    + MoocSchema.Story.Cols.BODY + " TEXT ,"
+                    + MoocSchema.Story.Cols.AUDIO_LINK + " TEXT ,"
+                    + MoocSchema.Story.Cols.VIDEO_LINK + " TEXT ,"
+                    + MoocSchema.Story.Cols.IMAGE_NAME + " TEXT ,"
+                    + MoocSchema.Story.Cols.IMAGE_LINK + " TEXT ,"
+                    + MoocSchema.Story.Cols.TAGS + " TEXT ,"
+                    + MoocSchema.Story.Cols.CREATION_TIME + " INTEGER ,"
+                    + MoocSchema.Story.Cols.STORY_TIME + " INTEGER ,"
+                    + MoocSchema.Story.Cols.LATITUDE + " REAL ,"
+                    + MoocSchema.Story.Cols.LONGITUDE + " REAL );",
+            "create table " + TAGS + " ("
+                    + MoocSchema.Tags.Cols.ID
+                    + " integer primary key autoincrement, "
+                    + MoocSchema.Tags.Cols.LOGIN_ID + " INTEGER ,"
+                    + MoocSchema.Tags.Cols.STORY_ID + " INTEGER ,"
+                    + MoocSchema.Tags.Cols.TAG + " TEXT );" };
+
+    // The indexes version 3 added.
+    private static final String[] VERSION_3 = {
+            index(STORY, MoocSchema.Story.Cols.LOGIN_ID),
+            index(STORY, MoocSchema.Story.Cols.STORY_ID),
+            index(STORY, MoocSchema.Story.Cols.CREATION_TIME),
+            index(STORY, MoocSchema.Story.Cols.STORY_TIME),
+            index(TAGS, MoocSchema.Tags.Cols.LOGIN_ID),
+            index(TAGS, MoocSchema.Tags.Cols.STORY_ID) };
+
+    private static final int STORIES = 20;
+    private static final int TAGS_PER_STORY = 3;
+
+    private Context mContext;
+    private MoocDataDBAdapter mAdapter;
+
+    private static String index(final String table, final String column) {
+        return "create index " + table + "_" + column + "_index on " + table
+                + " (" + column + ");";
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = new RenamingDelegatingContext(getContext(), "test.");
+        mContext.deleteDatabase(MoocDataDBAdapter.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mAdapter != null) {
+            mAdapter.close();
+        }
+        mContext.deleteDatabase(MoocDataDBAdapter.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testMigrateFromVersion2() {
+        createOldDatabase(2, VERSION_2);
+        openAdapter();
+        assertMigrated();
+    }
+
+    public void testMigrateFromVersion3() {
+        createOldDatabase(3, VERSION_2, VERSION_3);
+        openAdapter();
+        assertMigrated();
+    }
+
+    public void testCreatedAndMigratedSchemasMatch() {
+        openAdapter();
+        final HashSet<String> created = getSchema();
+        mAdapter.close();
+        mContext.deleteDatabase(MoocDataDBAdapter.DATABASE_NAME);
+
+        createOldDatabase(2, VERSION_2);
+        openAdapter();
+        assertEquals(created, getSchema());
+    }
+
+    /*
+     * Create the database as the given version left it, with the test stories
+     * and tags in it.
+     */
+    private void createOldDatabase(final int version, final String[]... sql) {
+        final SQLiteDatabase db = mContext.openOrCreateDatabase(
+                MoocDataDBAdapter.DATABASE_NAME, 0, null);
+        try {
+            for (String[] statements : sql) {
+                for (String statement : statements) {
+                    db.execSQL(statement);
+                }
+            }
+            for (ContentValues story : MoocTestData.stories(STORIES)) {
+                db.insert(STORY, null, story);
+            }
+            for (ContentValues tag : MoocTestData.tags(STORIES,
+                    TAGS_PER_STORY)) {
+                db.insert(TAGS, null, tag);
+            }
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+    }
+
+    private void openAdapter() {
+        mAdapter = new MoocDataDBAdapter(mContext);
+        mAdapter.open();
+    }
+
+    /*
+     * Assert the database is at the current version, with its stories and
+     * tags kept, and that the stories can be searched.
+     */
+    private void assertMigrated() {
+        final SQLiteDatabase db = mAdapter.getDB();
+        assertEquals(MoocDataDBAdapter.DATABASE_VERSION, db.getVersion());
+        assertEquals(STORIES, count(STORY));
+        assertEquals(STORIES * TAGS_PER_STORY, count(TAGS));
+
+        final Cursor found = mAdapter.searchStories("\"story\"",
+                new String[] { MoocSchema.Story.Cols.ID }, null, null, null);
+        try {
+            assertEquals(STORIES, found.getCount());
+        } finally {
+            found.close();
+        }
+
+        final HashSet<String> indexes = getSchema();
+        assertTrue(indexes.contains(STORY + "_" + MoocSchema.Story.Cols.LOGIN_ID
+                + "_" + MoocSchema.Story.Cols.CREATION_TIME + "_index"));
+        assertFalse(indexes.contains(STORY + "_"
+                + MoocSchema.Story.Cols.LOGIN_ID + "_index"));
+    }
+
+    private int count(final String table) {
+        final Cursor cursor = mAdapter.getDB().rawQuery(
+                "select count(*) from " + table, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+     * Get the names of the tables, indexes and triggers in the database.
+     */
+    private HashSet<String> getSchema() {
+        final Cursor cursor = mAdapter.getDB().rawQuery(
+                "select name from sqlite_master where name not like 'sqlite_%'",
+                null);
+        final HashSet<String> names = new HashSet<String>();
+        try {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return names;
+    }
+}
@@ -0,0 +1,75 @@
+package edu.vuum.mocca.provider;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+/**
+ * Benchmark of importing stories into MoocProvider.
+ * <p>
+ * A 10k story import goes through bulkInsert(), which inserts them all in one
+ * transaction, and its rows per second are logged next to those of inserting
+ * stories one by one, each in its own transaction.
+ */
+public class MoocProviderImportBenchmark extends
+        ProviderTestCase2<MoocProvider> {
+
+    private static final String LOG_TAG = MoocProviderImportBenchmark.class
+            .getCanonicalName();
+
+    private static final int IMPORTED_STORIES = 10000;
+    // Fewer, as each takes a transaction of its own.
+    private static final int INSERTED_STORIES = 1000;
+
+    public MoocProviderImportBenchmark() {
+        super(MoocProvider.class, MoocSchema.AUTHORITY);
+    }
+
+    public void testImport10kStories() {
+        final ContentResolver resolver = getMockContentResolver();
+        final ContentValues[] stories = MoocTestData.stories(IMPORTED_STORIES);
+
+        final long start = SystemClock.elapsedRealtime();
+        final int count = resolver.bulkInsert(MoocSchema.Story.CONTENT_URI,
+                stories);
+        final long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+        final long bulkRate = count * 1000L / elapsed;
+        Log.i(LOG_TAG, "bulkInsert(): " + count + " stories in " + elapsed
+                + " ms, " + bulkRate + " rows/sec");
+
+        assertEquals(IMPORTED_STORIES, count);
+        assertEquals(IMPORTED_STORIES, countStories());
+        assertTrue(bulkRate > insertRate());
+    }
+
+    /*
+     * Insert stories one by one, and get the rows per second.
+     */
+    private long insertRate() {
+        final ContentResolver resolver = getMockContentResolver();
+        final long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < INSERTED_STORIES; i++) {
+            resolver.insert(MoocSchema.Story.CONTENT_URI,
+                    MoocTestData.story(IMPORTED_STORIES + i));
+        }
+        final long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+        final long rate = INSERTED_STORIES * 1000L / elapsed;
+        Log.i(LOG_TAG, "insert(): " + INSERTED_STORIES + " stories in "
+                + elapsed + " ms, " + rate + " rows/sec");
+        return rate;
+    }
+
+    private int countStories() {
+        final Cursor cursor = getMockContentResolver().query(
+                MoocSchema.Story.CONTENT_URI,
+                new String[] { MoocSchema.Story.Cols.ID }, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
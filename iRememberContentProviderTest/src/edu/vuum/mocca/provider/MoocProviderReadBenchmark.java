@@ -0,0 +1,161 @@
+package edu.vuum.mocca.provider;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.SystemClock;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+/**
+ * Stress benchmark of concurrent reads from MoocProvider.
+ * <p>
+ * Reader threads query the tags of random stories for a fixed time, first on
+ * their own with more and more threads, then next to a thread inserting
+ * stories, and the queries per second of each run are logged. With the
+ * database in write ahead logging mode the readers neither wait for each
+ * other nor for the writer, so the throughput goes up with the readers as far
+ * as the device has cores for them.
+ */
+public class MoocProviderReadBenchmark extends ProviderTestCase2<MoocProvider> {
+
+    private static final String LOG_TAG = MoocProviderReadBenchmark.class
+            .getCanonicalName();
+
+    private static final int STORIES = 1000;
+    private static final int TAGS_PER_STORY = 5;
+    // How long each run lasts.
+    private static final long RUN_MS = 3000;
+    // How much faster two readers must be than one, given two cores.
+    private static final double MIN_SCALING = 1.25;
+
+    public MoocProviderReadBenchmark() {
+        super(MoocProvider.class, MoocSchema.AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        final ContentResolver resolver = getMockContentResolver();
+        resolver.bulkInsert(MoocSchema.Story.CONTENT_URI,
+                MoocTestData.stories(STORIES));
+        resolver.bulkInsert(MoocSchema.Tags.CONTENT_URI,
+                MoocTestData.tags(STORIES, TAGS_PER_STORY));
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void testDatabaseUsesWriteAheadLogging() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            assertTrue(getProvider().mDB.getDB().isWriteAheadLoggingEnabled());
+        }
+    }
+
+    public void testReadThroughputScalesWithReaders() throws Exception {
+        final long one = measureReads(1, false);
+        final long two = measureReads(2, false);
+        final long four = measureReads(4, false);
+        Log.i(LOG_TAG, "queries/sec with 1, 2 and 4 readers: " + one + ", "
+                + two + ", " + four);
+        assertTrue(one > 0);
+        if (Runtime.getRuntime().availableProcessors() >= 2) {
+            assertTrue("2 readers made " + two + " queries/sec, 1 made " + one,
+                    two >= one * MIN_SCALING);
+        }
+    }
+
+    public void testReadsDoNotWaitForWriter() throws Exception {
+        final long alone = measureReads(1, false);
+        final long withWriter = measureReads(1, true);
+        Log.i(LOG_TAG, "queries/sec alone and next to a writer: " + alone
+                + ", " + withWriter);
+        assertTrue(withWriter > 0);
+        if (Runtime.getRuntime().availableProcessors() >= 2) {
+            assertTrue("a reader made " + withWriter
+                    + " queries/sec next to a writer, " + alone + " alone",
+                    withWriter >= alone / 2);
+        }
+    }
+
+    /*
+     * Run readers threads querying the tags of random stories for RUN_MS, and
+     * a thread inserting stories if withWriter is set. Returns the queries
+     * per second the readers made.
+     */
+    private long measureReads(final int readers, final boolean withWriter)
+            throws Exception {
+        final ContentResolver resolver = getMockContentResolver();
+        final AtomicLong queries = new AtomicLong();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final long end = SystemClock.elapsedRealtime() + RUN_MS;
+
+        final Thread[] threads = new Thread[readers + (withWriter ? 1 : 0)];
+        for (int r = 0; r < readers; r++) {
+            final Random random = new Random(r);
+            threads[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        long count = 0;
+                        while (SystemClock.elapsedRealtime() < end) {
+                            readTags(resolver, random.nextInt(STORIES));
+                            count++;
+                        }
+                        queries.addAndGet(count);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            });
+        }
+        if (withWriter) {
+            threads[readers] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int i = STORIES;
+                        while (SystemClock.elapsedRealtime() < end) {
+                            resolver.insert(MoocSchema.Story.CONTENT_URI,
+                                    MoocTestData.story(i++));
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            });
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        return queries.get() * 1000 / RUN_MS;
+    }
+
+    /*
+     * Query the tags of a story, reading every row like a list would.
+     */
+    private static void readTags(final ContentResolver resolver,
+            final int storyId) {
+        final Cursor cursor = resolver.query(MoocSchema.Tags.CONTENT_URI, null,
+                MoocSchema.Tags.Cols.STORY_ID + " = ?",
+                new String[] { String.valueOf(storyId) }, null);
+        try {
+            final int tag = cursor.getColumnIndex(MoocSchema.Tags.Cols.TAG);
+            while (cursor.moveToNext()) {
+                cursor.getString(tag);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package edu.vuum.mocca.provider;
+
+import java.util.ArrayList;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+/**
+ * Check that the queries stories and tags are most often looked up with use
+ * the indexes of MoocDataDBAdapter, rather than scanning or sorting a table.
+ */
+public class MoocQueryPlanTest extends AndroidTestCase {
+
+    private static final String STORY = MoocSchema.Story.TABLE_NAME;
+    private static final String TAGS = MoocSchema.Tags.TABLE_NAME;
+
+    private MoocDataDBAdapter mAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAdapter = new MoocDataDBAdapter(getContext(), true);
+        mAdapter.open();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mAdapter.close();
+        super.tearDown();
+    }
+
+    public void testTagsOfStoryUseIndex() {
+        assertUsesIndex("select * from " + TAGS + " where "
+                + MoocSchema.Tags.Cols.STORY_ID + " = ?", "1");
+    }
+
+    public void testTagsOfLoginUseIndex() {
+        assertUsesIndex("select * from " + TAGS + " where "
+                + MoocSchema.Tags.Cols.LOGIN_ID + " = ?", "1");
+    }
+
+    public void testStoryByStoryIdUsesIndex() {
+        assertUsesIndex("select * from " + STORY + " where "
+                + MoocSchema.Story.Cols.STORY_ID + " = ?", "1");
+    }
+
+    public void testStoriesOfLoginByCreationTimeUseIndex() {
+        assertUsesIndex("select * from " + STORY + " where "
+                + MoocSchema.Story.Cols.LOGIN_ID + " = ? order by "
+                + MoocSchema.Story.Cols.CREATION_TIME, "1");
+    }
+
+    public void testStoriesByCreationTimeUseIndex() {
+        assertUsesIndex("select * from " + STORY + " order by "
+                + MoocSchema.Story.Cols.CREATION_TIME);
+    }
+
+    public void testStoriesByStoryTimeUseIndex() {
+        assertUsesIndex("select * from " + STORY + " order by "
+                + MoocSchema.Story.Cols.STORY_TIME + " desc");
+    }
+
+    /*
+     * Assert that every table sql reads is read through an index, and that
+     * nothing is sorted after it is read.
+     */
+    private void assertUsesIndex(final String sql, final String... args) {
+        final ArrayList<String> plan = explain(sql, args);
+        assertFalse("empty plan for " + sql, plan.isEmpty());
+        for (String step : plan) {
+            assertFalse("sorts for " + sql + ": " + plan,
+                    step.contains("TEMP B-TREE"));
+            if (step.startsWith("SCAN") || step.startsWith("SEARCH")) {
+                assertTrue("no index used for " + sql + ": " + plan,
+                        step.contains(" INDEX ")
+                                || step.contains("INTEGER PRIMARY KEY"));
+            }
+        }
+    }
+
+    /*
+     * Get the steps of the query plan of sql.
+     */
+    private ArrayList<String> explain(final String sql, final String[] args) {
+        final SQLiteDatabase db = mAdapter.getDB();
+        final Cursor cursor = db.rawQuery("explain query plan " + sql, args);
+        final ArrayList<String> plan = new ArrayList<String>();
+        try {
+            final int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.add(cursor.getString(detail));
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan;
+    }
+}
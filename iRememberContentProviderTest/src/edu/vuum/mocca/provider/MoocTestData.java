@@ -0,0 +1,58 @@
+package edu.vuum.mocca.provider;
+
+import android.content.ContentValues;
+
+/**
+ * Stories and tags to fill the database with in the tests.
+ */
+final class MoocTestData {
+
+    private MoocTestData() {
+    }
+
+    /**
+     * Get the values of the i-th test story, whose story id is i.
+     */
+    static ContentValues story(final int i) {
+        final ContentValues values = new ContentValues();
+        values.put(MoocSchema.Story.Cols.LOGIN_ID, i % 10);
+        values.put(MoocSchema.Story.Cols.STORY_ID, i);
+        values.put(MoocSchema.Story.Cols.TITLE, "Story " + i);
+        values.put(MoocSchema.Story.Cols.BODY, "The body of story " + i
+                + ", long enough to look like something a user would write.");
+        values.put(MoocSchema.Story.Cols.TAGS, "tag" + (i % 7));
+        values.put(MoocSchema.Story.Cols.CREATION_TIME, 1000000L + i);
+        values.put(MoocSchema.Story.Cols.STORY_TIME, 2000000L + i);
+        values.put(MoocSchema.Story.Cols.LATITUDE, 36.14);
+        values.put(MoocSchema.Story.Cols.LONGITUDE, -86.80);
+        return values;
+    }
+
+    /**
+     * Get the count first test stories.
+     */
+    static ContentValues[] stories(final int count) {
+        final ContentValues[] values = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = story(i);
+        }
+        return values;
+    }
+
+    /**
+     * Get perStory tags for each of the count first test stories.
+     */
+    static ContentValues[] tags(final int count, final int perStory) {
+        final ContentValues[] values = new ContentValues[count * perStory];
+        for (int i = 0; i < count; i++) {
+            for (int t = 0; t < perStory; t++) {
+                final ContentValues tag = new ContentValues();
+                tag.put(MoocSchema.Tags.Cols.LOGIN_ID, i % 10);
+                tag.put(MoocSchema.Tags.Cols.STORY_ID, i);
+                tag.put(MoocSchema.Tags.Cols.TAG, "tag" + t);
+                values[i * perStory + t] = tag;
+            }
+        }
+        return values;
+    }
+}